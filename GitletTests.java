@@ -1514,4 +1514,742 @@ public class GitletTests {
         assertFileEquals(NOTF, "F.txt");
         assertFileEquals(G, "G.txt");
     }
+
+    @Test
+    public void test45_gcPrunesUnreachable() {
+        i_setup2();
+        writeFile(WUG2, "h.txt");
+        gitletCommand(new String[]{"add", "h.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add h"}, "");
+        Matcher m = gitletCommandP(new String[]{"log"}, """
+                ===
+                ${COMMIT_HEAD}
+                Add h
+
+                ===
+                ${COMMIT_HEAD}
+                Two files
+
+                ===
+                ${COMMIT_HEAD}
+                initial commit
+
+                """.replace("${COMMIT_HEAD}", COMMIT_HEAD));
+        String uid2 = m.group(2);
+        gitletCommand(new String[]{"reset", uid2}, "");
+        gitletCommand(new String[]{"gc"}, "Removed 0 unreachable objects, reclaimed 0 bytes.");
+        // the commit, its tree and the blob of h.txt
+        gitletCommandP(new String[]{"gc", "--prune=now"}, "Removed 3 unreachable objects, reclaimed \\d+ bytes.");
+        gitletCommand(new String[]{"find", "Add h"}, "Found no commit with that message.");
+        assertFileEquals(WUG, "f.txt");
+    }
+
+    @Test
+    public void test46_logLimitOneline() {
+        i_setup2();
+        writeFile(WUG2, "h.txt");
+        gitletCommand(new String[]{"add", "h.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add h"}, "");
+        gitletCommandP(new String[]{"log", "-n", "1"}, """
+                ===
+                ${COMMIT_HEAD}
+                Add h
+
+                """.replace("${COMMIT_HEAD}", COMMIT_HEAD));
+        gitletCommandP(new String[]{"log", "--oneline"}, """
+                [a-f0-9]{7} Add h
+                [a-f0-9]{7} Two files
+                [a-f0-9]{7} initial commit
+                """);
+        gitletCommandP(new String[]{"log", "-n", "2", "--oneline"}, """
+                [a-f0-9]{7} Add h
+                [a-f0-9]{7} Two files
+                """);
+        gitletCommand(new String[]{"log", "-n"}, "Incorrect operands.");
+    }
+
+    @Test
+    public void test47_subdirectories() {
+        i_prelude1();
+        new File("src/nested").mkdirs();
+        writeFile(WUG, "src/nested/f.txt");
+        writeFile(NOTWUG, "src/g.txt");
+        gitletCommand(new String[]{"add", "src"}, "");
+        gitletCommand(new String[]{"commit", "Add src"}, "");
+        gitletCommand(new String[]{"branch", "other"}, "");
+        gitletCommand(new String[]{"rm", "src/nested/f.txt"}, "");
+        assertFileDoesNotExist("src/nested");
+        gitletCommand(new String[]{"commit", "Remove nested"}, "");
+        gitletCommand(new String[]{"switch", "other"}, "");
+        assertFileEquals(WUG, "src/nested/f.txt");
+        assertFileEquals(NOTWUG, "src/g.txt");
+        gitletCommand(new String[]{"switch", "main"}, "");
+        assertFileDoesNotExist("src/nested");
+        gitletCommand(new String[]{"restore", "--", "src/g.txt"}, "");
+        assertFileEquals(NOTWUG, "src/g.txt");
+    }
+
+    @Test
+    public void test48_ignoreFile() throws IOException {
+        i_prelude1();
+        new File("build/classes").mkdirs();
+        new File("src").mkdirs();
+        Files.writeString(Path.of(".gitletignore"), "build/\n*.txt\n!keep.txt\n");
+        writeFile(WUG, "build/classes/f.txt");
+        writeFile(WUG, "src/f.txt");
+        writeFile(NOTWUG, "src/keep.txt");
+        gitletCommand(new String[]{"add", "."}, "");
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+                .gitletignore
+                src/keep.txt
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+
+                """);
+    }
+
+    @Test
+    public void test49_reflogUndoesReset() {
+        i_setup2();
+        writeFile(WUG2, "h.txt");
+        gitletCommand(new String[]{"add", "h.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add h"}, "");
+        gitletCommand(new String[]{"reset", "HEAD@{1}"}, "");
+        assertFileDoesNotExist("h.txt");
+        gitletCommandP(new String[]{"reflog"}, """
+                [a-f0-9]{7} HEAD@\\{0\\}: reset: Two files
+                [a-f0-9]{7} HEAD@\\{1\\}: commit: Add h
+                [a-f0-9]{7} HEAD@\\{2\\}: commit: Two files
+                [a-f0-9]{7} HEAD@\\{3\\}: init: initial commit
+                """);
+        gitletCommand(new String[]{"reset", "HEAD@{1}"}, "");
+        assertFileEquals(WUG2, "h.txt");
+        gitletCommand(new String[]{"reset", "HEAD@{9}"}, "No commit with that id exists.");
+    }
+
+    @Test
+    public void test50_revisionExpressions() {
+        i_setup2();
+        writeFile(WUG2, "h.txt");
+        gitletCommand(new String[]{"add", "h.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add h"}, "");
+        gitletCommandP(new String[]{"log", "--oneline", "HEAD~1"}, """
+                [a-f0-9]{7} Two files
+                [a-f0-9]{7} initial commit
+                """);
+        gitletCommandP(new String[]{"log", "--oneline", "main~2..main"}, """
+                [a-f0-9]{7} Add h
+                [a-f0-9]{7} Two files
+                """);
+        gitletCommand(new String[]{"diff", "HEAD^", "HEAD"}, "A h.txt");
+        gitletCommand(new String[]{"log", "HEAD~5"}, "No commit with that id exists.");
+        gitletCommand(new String[]{"restore", "HEAD~2", "--", "f.txt"}, "File does not exist in that commit.");
+    }
+
+    @Test
+    public void test51_mergeFollowsRename() {
+        i_setup2();
+        gitletCommand(new String[]{"branch", "other"}, "");
+        gitletCommand(new String[]{"rm", "f.txt"}, "");
+        writeFile(WUG, "moved.txt");
+        gitletCommand(new String[]{"add", "moved.txt"}, "");
+        gitletCommand(new String[]{"commit", "Rename f.txt"}, "");
+        gitletCommand(new String[]{"diff", "HEAD^"}, "R100 f.txt moved.txt");
+        gitletCommand(new String[]{"switch", "other"}, "");
+        writeFile(WUG2, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change f.txt"}, "");
+        gitletCommand(new String[]{"switch", "main"}, "");
+        gitletCommand(new String[]{"merge", "other"}, "");
+        assertFileDoesNotExist("f.txt");
+        assertFileEquals(WUG2, "moved.txt");
+        assertFileEquals(NOTWUG, "g.txt");
+    }
+
+    @Test
+    public void test52_logPath() throws IOException {
+        i_setup2();
+        writeFile(WUG2, "h.txt");
+        gitletCommand(new String[]{"add", "h.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add h"}, "");
+        writeFile(WUG3, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change f"}, "");
+        gitletCommandP(new String[]{"log", "--oneline", "--", "f.txt"}, """
+                [a-f0-9]{7} Change f
+                [a-f0-9]{7} Two files
+                """);
+        gitletCommandP(new String[]{"log", "--oneline", "-n", "1", "--", "h.txt"}, """
+                [a-f0-9]{7} Add h
+                """);
+        gitletCommand(new String[]{"log", "--oneline", "--", "nothere.txt"}, "");
+        // without the lock, filters of older commits are computed but not stored
+        byte[] filters = Files.readAllBytes(Path.of(".gitlet/changed-paths"));
+        Files.write(Path.of(".gitlet/changed-paths"), Arrays.copyOf(filters, filters.length / 2 + 1));
+        gitletCommandP(new String[]{"log", "--oneline", "--", "f.txt"}, """
+                [a-f0-9]{7} Change f
+                [a-f0-9]{7} Two files
+                """);
+        assertEquals(filters.length / 2 + 1L, Files.size(Path.of(".gitlet/changed-paths")));
+        // the next commit overwrites the torn record instead of following
+        // it; a record is a 20-byte id and a 64-byte filter
+        gitletCommand(new String[]{"rm", "h.txt"}, "");
+        gitletCommand(new String[]{"commit", "Remove h"}, "");
+        assertEquals(0L, Files.size(Path.of(".gitlet/changed-paths")) % 84);
+        gitletCommandP(new String[]{"log", "--oneline", "--", "h.txt"}, """
+                [a-f0-9]{7} Remove h
+                [a-f0-9]{7} Add h
+                """);
+    }
+
+    @Test
+    public void test53_blame() {
+        i_setup2();
+        writeFile(WUG2, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change f"}, "");
+        gitletCommandP(new String[]{"blame", "f.txt"}, """
+                [a-f0-9]{7} \\(\\d{4}-\\d\\d-\\d\\d \\d\\d:\\d\\d:\\d\\d 1\\) Another wug.
+                """);
+        gitletCommandP(new String[]{"blame", "HEAD~1", "f.txt"}, """
+                [a-f0-9]{7} \\(\\d{4}-\\d\\d-\\d\\d \\d\\d:\\d\\d:\\d\\d 1\\) This is a wug.
+                """);
+        gitletCommand(new String[]{"blame", "h.txt"}, "File does not exist in that commit.");
+    }
+
+    @Test
+    public void test54_tags() {
+        i_setup2();
+        writeFile(WUG2, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change f"}, "");
+        gitletCommand(new String[]{"tag", "v1", "HEAD~1"}, "");
+        gitletCommand(new String[]{"tag", "-m", "Second release", "v2"}, "");
+        gitletCommand(new String[]{"tag", "v2"}, "A tag with that name already exists.");
+        gitletCommand(new String[]{"tags"}, """
+                v1
+                v2 Second release
+                """);
+        gitletCommand(new String[]{"restore", "v1", "--", "f.txt"}, "");
+        assertFileEquals(WUG, "f.txt");
+        gitletCommand(new String[]{"restore", "v2", "--", "f.txt"}, "");
+        assertFileEquals(WUG2, "f.txt");
+        gitletCommand(new String[]{"tag", "-d", "v1"}, "");
+        gitletCommand(new String[]{"tag", "-d", "v1"}, "A tag with that name does not exist.");
+        gitletCommand(new String[]{"tags"}, "v2 Second release");
+        gitletCommand(new String[]{"tag", "-d"}, "Incorrect operands.");
+        gitletCommand(new String[]{"tag", "-m", "Third release"}, "Incorrect operands.");
+        gitletCommand(new String[]{"tag", "-m", "Third release", "-x"}, "Incorrect operands.");
+        gitletCommand(new String[]{"tag", "-x", "HEAD"}, "Incorrect operands.");
+        gitletCommand(new String[]{"tags"}, "v2 Second release");
+    }
+
+    @Test
+    public void test55_stash() {
+        i_setup2();
+        gitletCommand(new String[]{"stash"}, "No local changes to save.");
+        writeFile(WUG2, "f.txt");
+        writeFile(WUG3, "h.txt");
+        gitletCommand(new String[]{"add", "h.txt"}, "");
+        gitletCommand(new String[]{"stash", "push", "Work in progress"}, "");
+        assertFileEquals(WUG, "f.txt");
+        assertFileDoesNotExist("h.txt");
+        gitletCommand(new String[]{"stash", "list"}, "stash@{0}: Work in progress");
+        gitletCommand(new String[]{"stash", "pop"}, "");
+        assertFileEquals(WUG2, "f.txt");
+        assertFileEquals(WUG3, "h.txt");
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+                h.txt
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+
+                """);
+        gitletCommand(new String[]{"stash", "pop"}, "No stash entries found.");
+        gitletCommand(new String[]{"rm", "g.txt"}, "");
+        writeFile(NOTWUG, "g.txt");
+        gitletCommand(new String[]{"stash"},
+                "There is an untracked file in the way; delete it, or add and commit it first.");
+        gitletCommand(new String[]{"stash", "list"}, "");
+        assertFileEquals(WUG2, "f.txt");
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+                h.txt
+
+                === Removed Files ===
+                g.txt
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+
+                """);
+    }
+
+    @Test
+    public void test56_cherryPickRebase() {
+        i_setup2();
+        gitletCommand(new String[]{"branch", "other"}, "");
+        writeFile(WUG2, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change f"}, "");
+        writeFile(WUG3, "h.txt");
+        gitletCommand(new String[]{"add", "h.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add h"}, "");
+        gitletCommand(new String[]{"switch", "other"}, "");
+        writeFile(WUG, "k.txt");
+        gitletCommand(new String[]{"add", "k.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add k"}, "");
+        gitletCommand(new String[]{"cherry-pick", "main~1"}, "");
+        assertFileEquals(WUG2, "f.txt");
+        assertFileDoesNotExist("h.txt");
+        gitletCommand(new String[]{"cherry-pick", "main~1"}, "No changes to cherry-pick.");
+        gitletCommand(new String[]{"switch", "main"}, "");
+        gitletCommand(new String[]{"rebase", "other"}, "");
+        assertFileEquals(WUG2, "f.txt");
+        assertFileEquals(WUG3, "h.txt");
+        assertFileEquals(WUG, "k.txt");
+        gitletCommandP(new String[]{"log", "--oneline"}, """
+                [a-f0-9]{7} Add h
+                [a-f0-9]{7} Change f
+                [a-f0-9]{7} Add k
+                [a-f0-9]{7} Two files
+                [a-f0-9]{7} initial commit
+                """);
+        gitletCommand(new String[]{"rebase", "other"}, "Current branch is up to date.");
+    }
+
+    @Test
+    public void test57_fsck() {
+        i_setup2();
+        gitletCommand(new String[]{"tag", "-m", "First release", "v1"}, "");
+        gitletCommandP(new String[]{"fsck"}, """
+                Checked \\d+ objects \\(\\d+ bytes\\) in \\d+ ms, [\\d.]+ MB/s.
+                No problems found.
+                """);
+        writeFile(WUG2, "h.txt");
+        gitletCommand(new String[]{"add", "h.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add h"}, "");
+        gitletCommandP(new String[]{"fsck", "--incremental"}, """
+                Checked \\d+ objects \\(\\d+ bytes\\) in \\d+ ms, [\\d.]+ MB/s.
+                No problems found.
+                """);
+    }
+
+    @Test
+    public void test58_batch() throws IOException {
+        i_setup2();
+        // a damaged stash makes stash list fail partway through the batch
+        Files.writeString(Path.of(".gitlet/stash"), "not a stash");
+        Files.writeString(Path.of("commands.txt"), """
+                # two commits with a checkpoint between them
+                add h.txt
+                commit "Add h"
+                checkpoint
+                rm h.txt
+                commit "Remove h"
+                stash list
+                log --oneline -n 1
+                """);
+        writeFile(WUG2, "h.txt");
+        gitletCommandP(new String[]{"batch", "commands.txt"}, """
+                .*StreamCorruptedException.*
+                [a-f0-9]{7} Remove h
+                """);
+        gitletCommandP(new String[]{"log", "--oneline"}, """
+                [a-f0-9]{7} Remove h
+                [a-f0-9]{7} Add h
+                [a-f0-9]{7} Two files
+                [a-f0-9]{7} initial commit
+                """);
+        assertFileDoesNotExist("h.txt");
+        gitletCommand(new String[]{"batch", "nothere.txt"}, "Cannot read nothere.txt.");
+    }
+
+    @Test
+    public void test59_configCompression() throws IOException {
+        i_prelude1();
+        gitletCommand(new String[]{"config", "core.compressionLevel", "42"},
+                "core.compressionLevel must be a number from -1 to 9.");
+        gitletCommand(new String[]{"config", "core.compression", "zip"},
+                "core.compression must be deflate or none.");
+        gitletCommand(new String[]{"config", "core.compressionLevel"}, "");
+        gitletCommand(new String[]{"config", "core.compression", "none"}, "");
+        gitletCommand(new String[]{"config", "core.compression"}, "none");
+        writeFile(WUG, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add f"}, "");
+        // uncompressed blobs hold exactly the bytes of the file
+        byte[] contents = Files.readAllBytes(WUG);
+        boolean found = false;
+        try (var blobs = Files.list(Path.of(".gitlet/blobs"))) {
+            for (Path blob : blobs.toList()) {
+                found |= Arrays.equals(contents, Files.readAllBytes(blob));
+            }
+        }
+        assertTrue("no raw blob holds f.txt", found);
+        gitletCommand(new String[]{"config", "core.compression", "deflate"}, "");
+        gitletCommand(new String[]{"config", "core.compressionLevel", "9"}, "");
+        writeFile(WUG2, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Change f"}, "");
+        gitletCommand(new String[]{"restore", "HEAD~1", "--", "f.txt"}, "");
+        assertFileEquals(WUG, "f.txt");
+    }
+
+    @Test
+    public void test60_remotes() throws IOException {
+        i_setup2();
+        // the remote starts as a copy of this repository
+        Path remote = Path.of("remote/.gitlet");
+        Files.createDirectories(remote.getParent());
+        try (var paths = Files.walk(Path.of(".gitlet"))) {
+            for (Path path : paths.toList()) {
+                Files.copy(path, remote.resolve(Path.of(".gitlet").relativize(path)));
+            }
+        }
+        gitletCommand(new String[]{"add-remote", "r", "nothere/.gitlet"}, "Remote directory not found.");
+        gitletCommand(new String[]{"add-remote", "r", "remote"}, "Remote directory not found.");
+        gitletCommand(new String[]{"add-remote", "r", "remote/.gitlet"}, "");
+        gitletCommand(new String[]{"add-remote", "r", "remote/.gitlet"}, "A remote with that name already exists.");
+        writeFile(WUG2, "h.txt");
+        gitletCommand(new String[]{"add", "h.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add h"}, "");
+        gitletCommand(new String[]{"push", "r", "main"}, "");
+        String pushed = Files.readString(Path.of(".gitlet/headcommit.txt"));
+        assertEquals(pushed, Files.readString(remote.resolve("headcommit.txt")));
+
+        // the remote is now ahead, so fetching and pulling fast-forward
+        gitletCommand(new String[]{"reset", "HEAD~1"}, "");
+        assertFileDoesNotExist("h.txt");
+        gitletCommand(new String[]{"fetch", "r", "main"}, "");
+        gitletCommand(new String[]{"fetch", "r", "nothere"}, "That remote does not have that branch.");
+        gitletCommandP(new String[]{"log", "--oneline", "-n", "1", "r/main"}, """
+                [a-f0-9]{7} Add h
+                """);
+        gitletCommand(new String[]{"pull", "r", "main"}, "Current branch fast-forwarded.");
+        assertFileEquals(WUG2, "h.txt");
+
+        // a push that would drop the remote's commits is refused
+        gitletCommand(new String[]{"reset", "HEAD~1"}, "");
+        writeFile(WUG3, "k.txt");
+        gitletCommand(new String[]{"add", "k.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add k"}, "");
+        gitletCommand(new String[]{"push", "r", "main"}, "Please pull down remote changes before pushing.");
+        assertEquals(pushed, Files.readString(remote.resolve("headcommit.txt")));
+    }
+
+    @Test
+    public void test61_mergeRenameRename() {
+        i_setup2();
+        gitletCommand(new String[]{"branch", "other"}, "");
+        gitletCommand(new String[]{"rm", "f.txt"}, "");
+        writeFile(WUG, "ours.txt");
+        gitletCommand(new String[]{"add", "ours.txt"}, "");
+        gitletCommand(new String[]{"commit", "Move f.txt to ours.txt"}, "");
+        gitletCommand(new String[]{"switch", "other"}, "");
+        gitletCommand(new String[]{"rm", "f.txt"}, "");
+        writeFile(WUG, "theirs.txt");
+        gitletCommand(new String[]{"add", "theirs.txt"}, "");
+        gitletCommand(new String[]{"commit", "Move f.txt to theirs.txt"}, "");
+        gitletCommand(new String[]{"switch", "main"}, "");
+        gitletCommand(new String[]{"merge", "other"}, "Encountered a merge conflict.");
+        assertFileDoesNotExist("f.txt");
+        assertFileEquals(WUG, "ours.txt");
+        assertFileEquals(WUG, "theirs.txt");
+        assertFileEquals(NOTWUG, "g.txt");
+    }
+
+    @Test
+    public void test62_refNames() {
+        i_setup2();
+        gitletCommand(new String[]{"branch", "../escape"}, "Invalid branch name.");
+        gitletCommand(new String[]{"branch", "a/b"}, "Invalid branch name.");
+        gitletCommand(new String[]{"branch", "main~1"}, "Invalid branch name.");
+        gitletCommand(new String[]{"branch", "HEAD"}, "Invalid branch name.");
+        gitletCommand(new String[]{"tag", "HEAD"}, "Invalid tag name.");
+        gitletCommand(new String[]{"tag", "..v1"}, "Invalid tag name.");
+        gitletCommand(new String[]{"tag", "v1/x"}, "Invalid tag name.");
+        gitletCommand(new String[]{"add-remote", "../r", ".gitlet"}, "Invalid remote name.");
+        gitletCommand(new String[]{"fetch", "r", "../main"}, "Invalid branch name.");
+        gitletCommand(new String[]{"push", "r", "a/b"}, "Invalid branch name.");
+        assertFileDoesNotExist(".gitlet/escape.txt");
+        gitletCommand(new String[]{"branch", "release-1.0"}, "");
+        gitletCommand(new String[]{"tag", "v1.0"}, "");
+        gitletCommandP(new String[]{"log", "--oneline", "-n", "1", "release-1.0"}, """
+                [a-f0-9]{7} Two files
+                """);
+    }
+
+    @Test
+    public void test63_contentAddressedBlobs() throws IOException {
+        i_prelude1();
+        writeFile(WUG, "f.txt");
+        writeFile(WUG, "g.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"add", "g.txt"}, "");
+        gitletCommand(new String[]{"commit", "Two copies"}, "");
+        // identical files share one blob
+        try (var blobs = Files.list(Path.of(".gitlet/blobs"))) {
+            assertEquals(1L, blobs.count());
+        }
+        gitletCommand(new String[]{"migrate-blobs"}, "Migrated 0 commits to content-addressed blobs.");
+        deleteFile("g.txt");
+        gitletCommand(new String[]{"restore", "HEAD", "--", "g.txt"}, "");
+        assertFileEquals(WUG, "g.txt");
+    }
+
+    @Test
+    public void test64_packRefs() {
+        i_setup2();
+        gitletCommand(new String[]{"branch", "b1"}, "");
+        gitletCommand(new String[]{"branch", "b2"}, "");
+        gitletCommand(new String[]{"pack-refs"}, "");
+        assertFileExists(".gitlet/packed-refs");
+        assertFileDoesNotExist(".gitlet/branches/b1.txt");
+        gitletCommand(new String[]{"branch", "b1"}, "A branch with that name already exists.");
+        // a loose branch written after packing takes precedence
+        writeFile(WUG2, "h.txt");
+        gitletCommand(new String[]{"add", "h.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add h"}, "");
+        assertFileExists(".gitlet/branches/main.txt");
+        gitletCommandP(new String[]{"log", "--oneline", "-n", "1", "main"}, """
+                [a-f0-9]{7} Add h
+                """);
+        gitletCommandP(new String[]{"log", "--oneline", "-n", "1", "b2"}, """
+                [a-f0-9]{7} Two files
+                """);
+        gitletCommand(new String[]{"rm-branch", "b1"}, "");
+        gitletCommand(new String[]{"rm-branch", "b1"}, "A branch with that name does not exist.");
+        gitletCommand(new String[]{"switch", "b2"}, "");
+        assertFileDoesNotExist("h.txt");
+    }
+
+    @Test
+    public void test65_sparseCheckout() throws IOException {
+        i_setup2();
+        Files.createDirectories(Path.of("d"));
+        writeFile(WUG2, "d/h.txt");
+        gitletCommand(new String[]{"add", "d/h.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add d/h"}, "");
+        gitletCommand(new String[]{"sparse-checkout", "set", "d"}, "");
+        gitletCommand(new String[]{"sparse-checkout", "list"}, "d");
+        assertFileDoesNotExist("f.txt");
+        assertFileDoesNotExist("g.txt");
+        assertFileEquals(WUG2, "d/h.txt");
+        writeFile(WUG, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "The path is outside the sparse-checkout definition.");
+        deleteFile("f.txt");
+        gitletCommand(new String[]{"sparse-checkout", "disable"}, "");
+        assertFileEquals(WUG, "f.txt");
+        assertFileEquals(NOTWUG, "g.txt");
+        assertFileEquals(WUG2, "d/h.txt");
+    }
+
+    @Test
+    public void test66_linkCheckout() throws IOException {
+        i_prelude1();
+        gitletCommand(new String[]{"config", "core.compression", "none"}, "");
+        gitletCommand(new String[]{"config", "checkout.mode", "link"}, "");
+        writeFile(WUG, "f.txt");
+        gitletCommand(new String[]{"add", "f.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add f"}, "");
+        deleteFile("f.txt");
+        gitletCommand(new String[]{"restore", "HEAD", "--", "f.txt"}, "");
+        assertFileEquals(WUG, "f.txt");
+        // the checked-out file is the blob itself
+        boolean linked = false;
+        try (var blobs = Files.list(Path.of(".gitlet/blobs"))) {
+            for (Path blob : blobs.toList()) {
+                linked |= Files.isSameFile(blob, Path.of("f.txt"));
+            }
+        }
+        assertTrue("f.txt is not linked to its blob", linked);
+    }
+
+    @Test
+    public void test67_sharedTrees() throws IOException {
+        i_setup2();
+        long trees;
+        try (var files = Files.list(Path.of(".gitlet/trees"))) {
+            trees = files.count();
+        }
+        gitletCommand(new String[]{"rm", "g.txt"}, "");
+        gitletCommand(new String[]{"commit", "Remove g"}, "");
+        writeFile(NOTWUG, "g.txt");
+        gitletCommand(new String[]{"add", "g.txt"}, "");
+        gitletCommand(new String[]{"commit", "Restore g"}, "");
+        // the last commit has the same files as "Two files", so it reuses its tree
+        try (var files = Files.list(Path.of(".gitlet/trees"))) {
+            assertEquals(trees + 1, files.count());
+        }
+        gitletCommand(new String[]{"reset", "HEAD~1"}, "");
+        assertFileDoesNotExist("g.txt");
+        assertFileEquals(WUG, "f.txt");
+    }
+
+    @Test
+    public void test68_commitJournal() throws IOException {
+        i_setup2();
+        String since = """
+                ===
+                ${COMMIT_HEAD}
+                Two files
+
+                """.replace("${COMMIT_HEAD}", COMMIT_HEAD);
+        String until = """
+                ===
+                ${COMMIT_HEAD}
+                initial commit
+
+                """.replace("${COMMIT_HEAD}", COMMIT_HEAD);
+        gitletCommandP(new String[]{"global-log", "--since", "2000-01-01"}, since);
+        gitletCommandP(new String[]{"global-log", "--until", "2000-01-01"}, until);
+        // a missing journal is rebuilt from the commits, and written back
+        // only by a command that holds the lock
+        Files.delete(Path.of(".gitlet/commit-journal"));
+        gitletCommandP(new String[]{"global-log", "--since", "2000-01-01"}, since);
+        gitletCommandP(new String[]{"global-log", "--until", "2000-01-01"}, until);
+        assertFileDoesNotExist(".gitlet/commit-journal");
+        writeFile(WUG2, "h.txt");
+        gitletCommand(new String[]{"add", "h.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add h"}, "");
+        assertFileExists(".gitlet/commit-journal");
+        gitletCommandP(new String[]{"global-log", "--since", "2000-01-01"}, """
+                ===
+                ${COMMIT_HEAD}
+                Add h
+
+                ===
+                ${COMMIT_HEAD}
+                Two files
+
+                """.replace("${COMMIT_HEAD}", COMMIT_HEAD));
+    }
+
+    @Test
+    public void test69_concurrentWriters() throws IOException, InterruptedException {
+        i_setup2();
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        List<Process> processes = new ArrayList<>();
+        for (int i = 0; i < 4; i += 1) {
+            writeFile(WUG2, "h" + i + ".txt");
+            Files.writeString(Path.of("commands" + i + ".txt"),
+                    "add h" + i + ".txt\ncommit \"Add h" + i + "\"\n");
+            processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    "gitlet.Main", "batch", "commands" + i + ".txt").redirectErrorStream(true).start());
+        }
+        // the lock runs the batches one at a time, so no commit is lost
+        for (Process process : processes) {
+            assertEquals("", new String(process.getInputStream().readAllBytes()));
+            assertEquals(0, process.waitFor());
+        }
+        gitletCommandP(new String[]{"log", "--oneline"}, """
+                [a-f0-9]{7} Add h\\d
+                [a-f0-9]{7} Add h\\d
+                [a-f0-9]{7} Add h\\d
+                [a-f0-9]{7} Add h\\d
+                [a-f0-9]{7} Two files
+                [a-f0-9]{7} initial commit
+                """);
+        gitletCommand(new String[]{"status"}, """
+                === Branches ===
+                *main
+
+                === Staged Files ===
+
+                === Removed Files ===
+
+                === Modifications Not Staged For Commit ===
+
+                === Untracked Files ===
+
+                """);
+    }
+
+    @Test
+    public void test70_parallelObjectWrites() {
+        i_prelude1();
+        // many files with few distinct contents, written by parallel workers
+        for (int i = 0; i < 40; i += 1) {
+            writeFile(i % 2 == 0 ? WUG : NOTWUG, "f" + i + ".txt");
+        }
+        gitletCommand(new String[]{"add", "."}, "");
+        gitletCommand(new String[]{"commit", "Forty files"}, "");
+        assertEquals(2, new File(".gitlet/blobs").list().length);
+        gitletCommandP(new String[]{"fsck"}, """
+                Checked \\d+ objects \\(\\d+ bytes\\) in \\d+ ms, [\\d.]+ MB/s.
+                No problems found.
+                """);
+        deleteFile("f39.txt");
+        gitletCommand(new String[]{"restore", "HEAD", "--", "f39.txt"}, "");
+        assertFileEquals(NOTWUG, "f39.txt");
+    }
+
+    @Test
+    public void test71_objectFilter() throws IOException, InterruptedException {
+        i_setup2();
+        Path filter = Path.of(".gitlet/object-filter");
+        byte[] stale = Files.readAllBytes(filter);
+        TimeUnit.MILLISECONDS.sleep(DELAY_MS);
+        writeFile(WUG2, "h.txt");
+        gitletCommand(new String[]{"add", "h.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add h"}, "");
+        // a filter older than the objects, as an older Gitlet leaves it,
+        // must not hide the new ones
+        Files.write(filter, stale);
+        gitletCommandP(new String[]{"log", "--oneline", "-n", "1"}, """
+                [a-f0-9]{7} Add h
+                """);
+        gitletCommand(new String[]{"reset", "HEAD~1"}, "");
+        gitletCommand(new String[]{"reset", "HEAD@{1}"}, "");
+        assertFileEquals(WUG2, "h.txt");
+        // nor may a missing one, which only a command holding the lock
+        // writes back
+        Files.delete(filter);
+        gitletCommandP(new String[]{"log", "--oneline", "-n", "1"}, """
+                [a-f0-9]{7} Add h
+                """);
+        assertFileDoesNotExist(".gitlet/object-filter");
+        gitletCommand(new String[]{"reset", "HEAD~1"}, "");
+        assertFileDoesNotExist("h.txt");
+        gitletCommandP(new String[]{"find", "Add h"}, "[a-f0-9]{40}\n");
+        writeFile(WUG3, "k.txt");
+        gitletCommand(new String[]{"add", "k.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add k"}, "");
+        assertFileExists(".gitlet/object-filter");
+    }
+
+    @Test
+    public void test72_malformedRevisions() {
+        i_setup2();
+        writeFile(WUG2, "h.txt");
+        gitletCommand(new String[]{"add", "h.txt"}, "");
+        gitletCommand(new String[]{"commit", "Add h"}, "");
+        gitletCommand(new String[]{"log", "-n", "1", "HEAD~x"}, "No commit with that id exists.");
+        gitletCommand(new String[]{"log", "-n", "1", "main^foo"}, "No commit with that id exists.");
+        gitletCommand(new String[]{"reset", "HEAD@{1}x"}, "No commit with that id exists.");
+        assertFileEquals(WUG2, "h.txt");
+        gitletCommandP(new String[]{"log", "--oneline", "-n", "1", "main~^"}, """
+                [a-f0-9]{7} initial commit
+                """);
+    }
 }
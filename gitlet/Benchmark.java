@@ -0,0 +1,225 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/** Micro-benchmarks for Gitlet's storage code. Usage:
+ *      java gitlet.Benchmark compression [FILES] [KILOBYTES]
+ *      java gitlet.Benchmark checkout [FILES] [KILOBYTES]
+ *      java gitlet.Benchmark concurrency [FILES] [KILOBYTES]
+ *  Each benchmark runs in a fresh temporary directory and prints one line
+ *  per configuration.
+ *
+ *  @author Gabriel and Umar
+ */
+public class Benchmark {
+
+    /** Runs the benchmark named by ARGS[0]. */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: java gitlet.Benchmark compression|checkout|concurrency [FILES] [KILOBYTES]");
+            return;
+        }
+        switch (args[0]) {
+            case "compression":
+                compression(intArg(args, 1, 200), intArg(args, 2, 64));
+                break;
+            case "checkout":
+                checkout(intArg(args, 1, 200), intArg(args, 2, 1024));
+                break;
+            case "concurrency":
+                concurrency(intArg(args, 1, 2000), intArg(args, 2, 16));
+                break;
+            default:
+                System.out.println("No benchmark with that name exists.");
+        }
+    }
+
+    /** Writes and reads back NUMFILES text-like blobs of KILOBYTES each with
+     *  every compression setting, reporting throughput and the compression
+     *  ratio. */
+    private static void compression(int numFiles, int kilobytes) throws IOException {
+        List<byte[]> blobs = new ArrayList<>();
+        Random random = new Random(61);
+        for (int i = 0; i < numFiles; i += 1) {
+            blobs.add(sourceLikeText(random, kilobytes * 1024));
+        }
+        long rawBytes = (long) numFiles * kilobytes * 1024;
+
+        System.out.printf("%-12s %10s %10s %8s%n", "setting", "write MB/s", "read MB/s", "ratio");
+        // -2 stands for compression turned off
+        int[] levels = {-2, 1, 6, 9};
+        for (int level : levels) {
+            Path dir = Files.createTempDirectory("gitlet-bench");
+            try {
+                File gitletDir = dir.toFile();
+                Files.createDirectories(dir.resolve("blobs"));
+                ObjectStore store = new ObjectStore(gitletDir, level != -2, level, false);
+
+                long start = System.nanoTime();
+                List<String> ids = new ArrayList<>();
+                for (byte[] blob : blobs) {
+                    ids.add(store.writeBlob(blob));
+                }
+                long writeNanos = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                long checksum = 0;
+                for (String id : ids) {
+                    checksum += store.readBlob(id).length;
+                }
+                long readNanos = System.nanoTime() - start;
+                if (checksum != rawBytes) {
+                    throw new IllegalStateException("read back " + checksum + " bytes");
+                }
+
+                long storedBytes = 0;
+                for (String id : ids) {
+                    storedBytes += store.blobFile(id).length();
+                }
+                System.out.printf("%-12s %10.1f %10.1f %8.2f%n",
+                        level == -2 ? "none" : "deflate " + level,
+                        megabytesPerSecond(rawBytes, writeNanos),
+                        megabytesPerSecond(rawBytes, readNanos),
+                        (double) rawBytes / storedBytes);
+            } finally {
+                deleteRecursively(dir);
+            }
+        }
+    }
+
+    /** Checks out NUMFILES random binary blobs of KILOBYTES each into an
+     *  empty working directory by streaming them, by transferTo, and by
+     *  hard links, reporting the time each takes. */
+    private static void checkout(int numFiles, int kilobytes) throws IOException {
+        Path dir = Files.createTempDirectory("gitlet-bench");
+        try {
+            Files.createDirectories(dir.resolve("blobs"));
+            ObjectStore store = new ObjectStore(dir.toFile(), false, 0, false);
+            Random random = new Random(61);
+            List<String> ids = new ArrayList<>();
+            for (int i = 0; i < numFiles; i += 1) {
+                byte[] blob = new byte[kilobytes * 1024];
+                random.nextBytes(blob);
+                ids.add(store.writeBlob(blob));
+            }
+            long totalBytes = (long) numFiles * kilobytes * 1024;
+
+            System.out.printf("%-12s %10s %10s%n", "mode", "ms", "MB/s");
+            String[] modes = {"stream", "transfer", "link"};
+            for (String mode : modes) {
+                Path work = Files.createDirectory(dir.resolve("work-" + mode));
+                long start = System.nanoTime();
+                for (int i = 0; i < ids.size(); i += 1) {
+                    File target = work.resolve("f" + i).toFile();
+                    if (mode.equals("stream")) {
+                        store.copyBlobTo(ids.get(i), target);
+                    } else {
+                        store.checkoutBlob(ids.get(i), target, mode.equals("link"));
+                    }
+                }
+                long nanos = System.nanoTime() - start;
+                System.out.printf("%-12s %10.1f %10.1f%n", mode, nanos / 1e6,
+                        megabytesPerSecond(totalBytes, nanos));
+            }
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    /** Writes NUMFILES text-like blobs of KILOBYTES each into a fresh
+     *  compressed store from 1, 2, 4, ... threads up to the number of cores,
+     *  reporting throughput and the speedup over one thread. Every blob is
+     *  submitted twice, so concurrent writes of the same object are
+     *  exercised too. */
+    private static void concurrency(int numFiles, int kilobytes) throws IOException {
+        List<byte[]> blobs = new ArrayList<>();
+        Random random = new Random(61);
+        for (int i = 0; i < numFiles; i += 1) {
+            blobs.add(sourceLikeText(random, kilobytes * 1024));
+        }
+        List<byte[]> work = new ArrayList<>(blobs);
+        work.addAll(blobs);
+        Collections.shuffle(work, random);
+        long totalBytes = (long) work.size() * kilobytes * 1024;
+
+        System.out.printf("%-8s %10s %10s %8s%n", "threads", "ms", "MB/s", "speedup");
+        double baseline = 0;
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            Path dir = Files.createTempDirectory("gitlet-bench");
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                Files.createDirectories(dir.resolve("blobs"));
+                ObjectStore store = new ObjectStore(dir.toFile(), true, 1, false);
+                List<Callable<String>> tasks = new ArrayList<>();
+                for (byte[] blob : work) {
+                    tasks.add(() -> store.writeBlob(blob));
+                }
+                long start = System.nanoTime();
+                for (Future<String> result : pool.invokeAll(tasks)) {
+                    result.get();
+                }
+                long nanos = System.nanoTime() - start;
+                if (!store.hasBlob(Utils.sha1(blobs.get(0)))) {
+                    throw new IllegalStateException("blob missing");
+                }
+                double rate = megabytesPerSecond(totalBytes, nanos);
+                baseline = threads == 1 ? rate : baseline;
+                System.out.printf("%-8d %10.1f %10.1f %8.2f%n", threads, nanos / 1e6, rate, rate / baseline);
+            } catch (InterruptedException | ExecutionException excp) {
+                throw new IllegalStateException(excp);
+            } finally {
+                pool.shutdown();
+                deleteRecursively(dir);
+            }
+        }
+    }
+
+    /** Returns SIZE bytes of pseudo-random lines that compress roughly like
+     *  source code. */
+    private static byte[] sourceLikeText(Random random, int size) {
+        String[] words = {"public", "static", "void", "return", "int", "String", "if", "else",
+            "for", "while", "new", "this", "null", "true", "false", "file", "commit", "blob",
+            "branch", "=", "+", "(", ")", "{", "}", ";", "0", "1", "i", "j"};
+        StringBuilder text = new StringBuilder(size + 80);
+        while (text.length() < size) {
+            int indent = random.nextInt(4) * 4;
+            text.append(" ".repeat(indent));
+            int lineWords = 1 + random.nextInt(10);
+            for (int i = 0; i < lineWords; i += 1) {
+                text.append(words[random.nextInt(words.length)]).append(' ');
+            }
+            text.append('\n');
+        }
+        text.setLength(size);
+        return text.toString().getBytes();
+    }
+
+    private static double megabytesPerSecond(long bytes, long nanos) {
+        return bytes / 1e6 / (nanos / 1e9);
+    }
+
+    private static int intArg(String[] args, int index, int defaultValue) {
+        return args.length > index ? Integer.parseInt(args[index]) : defaultValue;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
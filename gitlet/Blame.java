@@ -0,0 +1,222 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/** Finds the commit that last changed each line of a file.
+ *
+ *  Starting from a commit, the walk goes back along first parents but
+ *  visits only the commits that changed the file, found through the
+ *  changed-path filters. At each one its version of the file is compared
+ *  with its parent's: lines it added are attributed to it, and the others
+ *  are followed to their positions in the parent's version. The walk stops
+ *  as soon as every line is attributed, so blaming a file that was
+ *  recently rewritten reads only a few commits.
+ *
+ *  Lines are compared by 64-bit hashes, and versions are compared with
+ *  Myers' algorithm after trimming their common prefix and suffix. If they
+ *  differ by more than MAX_EDITS lines, lines are instead matched greedily
+ *  in order, which is fast but may attribute a few more lines to the newer
+ *  commit.
+ *
+ *  @author Gabriel and Umar
+ */
+class Blame {
+
+    /** The most line edits for which a shortest diff is computed. */
+    private static final int MAX_EDITS = 2000;
+
+    /** Where commits and blobs are read from. */
+    private final ObjectStore objects;
+
+    /** Blames files stored in OBJECTS. */
+    Blame(ObjectStore objects) {
+        this.objects = objects;
+    }
+
+    /** Returns the id of the commit that last changed each line of PATH as
+     *  of commit STARTID, where the file must exist. */
+    String[] attribute(String startId, String path) {
+        long[] lines = lineHashes(objects.readCommit(startId).getBlobs().get(path));
+        String[] owners = new String[lines.length];
+        // where each line of the starting version is in the version being
+        // looked at, or -1 once attributed
+        int[] position = new int[lines.length];
+        for (int i = 0; i < position.length; i += 1) {
+            position[i] = i;
+        }
+        int remaining = lines.length;
+
+        Iterator<Commit> history = new CommitIterator(objects, startId,
+            id -> objects.changedPaths().changed(id, path));
+        while (remaining > 0 && history.hasNext()) {
+            Commit commit = history.next();
+            String parentId = commit.getParentIds().get(0);
+            String parentBlob = parentId == null ? null : objects.readCommit(parentId).getBlobs().get(path);
+            int[] inParent = parentBlob == null ? null
+                : match(lineHashes(parentBlob), lineHashes(commit.getBlobs().get(path)));
+            for (int i = 0; i < position.length; i += 1) {
+                if (position[i] < 0) {
+                    continue;
+                }
+                position[i] = inParent == null ? -1 : inParent[position[i]];
+                if (position[i] < 0) {
+                    owners[i] = commit.getId();
+                    remaining -= 1;
+                }
+            }
+        }
+        return owners;
+    }
+
+    /** Returns the lines of blob ID as text. */
+    List<String> lines(String id) {
+        byte[] contents = objects.readBlob(id);
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        while (start < contents.length) {
+            int end = start;
+            while (end < contents.length && contents[end] != '\n') {
+                end += 1;
+            }
+            lines.add(new String(contents, start, end - start, StandardCharsets.UTF_8));
+            start = end + 1;
+        }
+        return lines;
+    }
+
+    /** Returns the 64-bit FNV-1a hash of each line of blob ID. */
+    private long[] lineHashes(String id) {
+        byte[] contents = objects.readBlob(id);
+        long[] hashes = new long[16];
+        int count = 0;
+        int start = 0;
+        while (start < contents.length) {
+            long h = 0xcbf29ce484222325L;
+            int end = start;
+            while (end < contents.length && contents[end] != '\n') {
+                h = (h ^ (contents[end] & 0xff)) * 0x100000001b3L;
+                end += 1;
+            }
+            if (count == hashes.length) {
+                hashes = Arrays.copyOf(hashes, count * 2);
+            }
+            hashes[count] = h;
+            count += 1;
+            start = end + 1;
+        }
+        return Arrays.copyOf(hashes, count);
+    }
+
+    /** Returns, for each line of B, the index of the line of A it is kept
+     *  from, or -1 if it was added. */
+    static int[] match(long[] a, long[] b) {
+        int[] result = new int[b.length];
+        Arrays.fill(result, -1);
+        int start = 0;
+        while (start < a.length && start < b.length && a[start] == b[start]) {
+            result[start] = start;
+            start += 1;
+        }
+        int endA = a.length;
+        int endB = b.length;
+        while (endA > start && endB > start && a[endA - 1] == b[endB - 1]) {
+            endA -= 1;
+            endB -= 1;
+            result[endB] = endA;
+        }
+        if (!myers(a, b, start, endA, endB, result)) {
+            greedy(a, b, start, endA, endB, result);
+        }
+        return result;
+    }
+
+    /** Fills RESULT with a shortest diff of A[START, ENDA) and B[START,
+     *  ENDB), or returns false if they differ by more than MAX_EDITS. */
+    private static boolean myers(long[] a, long[] b, int start, int endA, int endB, int[] result) {
+        int n = endA - start;
+        int m = endB - start;
+        int max = Math.min(n + m, MAX_EDITS);
+        int offset = max + 1;
+        int[] v = new int[2 * max + 3];
+        // v as it was before each round, for finding the path afterwards
+        List<int[]> trace = new ArrayList<>();
+        for (int d = 0; d <= max; d += 1) {
+            trace.add(v.clone());
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])
+                    ? v[offset + k + 1] : v[offset + k - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a[start + x] == b[start + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                v[offset + k] = x;
+                if (x >= n && y >= m) {
+                    backtrack(trace, offset, n, m, start, result);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Walks the rounds in TRACE back from (N, M), recording in RESULT
+     *  the diagonal moves, which are the kept lines. */
+    private static void backtrack(List<int[]> trace, int offset, int n, int m, int start, int[] result) {
+        int x = n;
+        int y = m;
+        for (int d = trace.size() - 1; d > 0; d -= 1) {
+            int[] v = trace.get(d);
+            int k = x - y;
+            int prevK = k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1]) ? k + 1 : k - 1;
+            int prevX = v[offset + prevK];
+            int prevY = prevX - prevK;
+            while (x > prevX && y > prevY) {
+                x -= 1;
+                y -= 1;
+                result[start + y] = start + x;
+            }
+            x = prevX;
+            y = prevY;
+        }
+        while (x > 0 && y > 0) {
+            x -= 1;
+            y -= 1;
+            result[start + y] = start + x;
+        }
+    }
+
+    /** Fills RESULT by matching each line of B[START, ENDB) with the next
+     *  equal line of A[START, ENDA) after the last match. */
+    private static void greedy(long[] a, long[] b, int start, int endA, int endB, int[] result) {
+        Map<Long, List<Integer>> positions = new HashMap<>();
+        for (int i = start; i < endA; i += 1) {
+            positions.computeIfAbsent(a[i], h -> new ArrayList<>()).add(i);
+        }
+        // how far into each list of positions has been passed; matches only
+        // move forward, so no position is looked at twice
+        Map<Long, Integer> cursors = new HashMap<>();
+        int last = start - 1;
+        for (int j = start; j < endB; j += 1) {
+            List<Integer> candidates = positions.get(b[j]);
+            if (candidates == null) {
+                continue;
+            }
+            int cursor = cursors.getOrDefault(b[j], 0);
+            while (cursor < candidates.size() && candidates.get(cursor) <= last) {
+                cursor += 1;
+            }
+            cursors.put(b[j], cursor);
+            if (cursor < candidates.size()) {
+                result[j] = candidates.get(cursor);
+                last = result[j];
+            }
+        }
+    }
+}
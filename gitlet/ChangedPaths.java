@@ -0,0 +1,192 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static gitlet.Utils.*;
+
+/** For each commit, a small Bloom filter of the paths it changed relative
+ *  to its first parent, kept in .gitlet/changed-paths, so that history
+ *  limited to a path can skip commits without reading them.
+ *
+ *  A changed file also counts as a change to every directory above it, so
+ *  a directory can be looked up as well as a file. Each filter is
+ *  FILTER_BYTES long and sized for MAX_PATHS paths; a commit that changed
+ *  more has a filter with every bit set, which matches any path. The file
+ *  is a sequence of records, each a 20-byte commit id followed by its
+ *  filter. New commits are added as they are stored, and filters for
+ *  older commits are computed the first time they are asked for. Records
+ *  are appended only by a process holding the repository lock, starting
+ *  at a record boundary so a torn record left by a crash is overwritten;
+ *  other processes keep the filters they compute in memory.
+ *
+ *  @author Gabriel and Umar
+ */
+class ChangedPaths {
+
+    /** Length in bytes of a binary SHA-1. */
+    private static final int ID_BYTES = UID_LENGTH / 2;
+
+    /** Length in bytes of one filter. */
+    private static final int FILTER_BYTES = 64;
+
+    /** Length in bytes of one record. */
+    private static final int RECORD_BYTES = ID_BYTES + FILTER_BYTES;
+
+    /** Bits set per path. */
+    private static final int HASHES = 7;
+
+    /** The most paths a filter holds before it matches everything. */
+    private static final int MAX_PATHS = 50;
+
+    /** The filter file. */
+    private final File file;
+
+    /** Where commits are read from to compute missing filters. */
+    private final ObjectStore objects;
+
+    /** The filter of each commit, or null before the file is loaded. */
+    private Map<String, byte[]> filters;
+
+    /** The changed-path filters of the repository whose .gitlet directory
+     *  is GITLETDIR, with commits read from OBJECTS. */
+    ChangedPaths(File gitletDir, ObjectStore objects) {
+        this.file = join(gitletDir, "changed-paths");
+        this.objects = objects;
+    }
+
+    /** Returns false if commit ID certainly did not change PATH, a file or
+     *  directory, and true if it may have. */
+    synchronized boolean mightHaveChanged(String id, String path) {
+        byte[] filter = load().get(id);
+        if (filter == null) {
+            filter = add(objects.readCommit(id));
+        }
+        for (int bit : bits(path)) {
+            if ((filter[bit >>> 3] & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns true if commit ID changed PATH, a file or directory,
+     *  relative to its first parent. The filter is checked first, so the
+     *  commit is usually only read if it did. */
+    boolean changed(String id, String path) {
+        if (!mightHaveChanged(id, path)) {
+            return false;
+        }
+        Commit commit = objects.readCommit(id);
+        String parentId = commit.getParentIds().get(0);
+        TreeMap<String, String> files = commit.getBlobs();
+        TreeMap<String, String> parentFiles = parentId == null
+                ? new TreeMap<>() : objects.readCommit(parentId).getBlobs();
+        // '0' follows '/', so this range is everything under the directory
+        return !Objects.equals(files.get(path), parentFiles.get(path))
+                || !files.subMap(path + "/", path + "0").equals(parentFiles.subMap(path + "/", path + "0"));
+    }
+
+    /** Computes the filter of COMMIT, stores it if this process holds the
+     *  repository lock, and returns it. */
+    synchronized byte[] add(Commit commit) {
+        Map<String, String> files = commit.getBlobs();
+        String parentId = commit.getParentIds().get(0);
+        Map<String, String> parentFiles = parentId == null ? Map.of() : objects.readCommit(parentId).getBlobs();
+
+        Set<String> changed = new HashSet<>();
+        Set<String> all = new HashSet<>(files.keySet());
+        all.addAll(parentFiles.keySet());
+        for (String path : all) {
+            if (!Objects.equals(files.get(path), parentFiles.get(path))) {
+                // the file and every directory above it
+                for (String prefix = path; changed.add(prefix) && prefix.indexOf('/') >= 0; ) {
+                    prefix = prefix.substring(0, prefix.lastIndexOf('/'));
+                }
+            }
+        }
+
+        byte[] filter = new byte[FILTER_BYTES];
+        if (changed.size() > MAX_PATHS) {
+            Arrays.fill(filter, (byte) 0xFF);
+        } else {
+            for (String path : changed) {
+                for (int bit : bits(path)) {
+                    filter[bit >>> 3] |= (byte) (1 << (bit & 7));
+                }
+            }
+        }
+
+        load().put(commit.getId(), filter);
+        if (objects.lockHeld()) {
+            ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+            record.put(hexToBytes(commit.getId())).put(filter).flip();
+            try (FileChannel channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                // a torn record left by a crash is overwritten
+                channel.write(record, channel.size() - channel.size() % RECORD_BYTES);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp);
+            }
+        }
+        return filter;
+    }
+
+    /** Reads the filter file if that has not been done yet. */
+    private Map<String, byte[]> load() {
+        if (filters == null) {
+            filters = new HashMap<>();
+            if (file.isFile()) {
+                ByteBuffer records = ByteBuffer.wrap(readContents(file));
+                byte[] id = new byte[ID_BYTES];
+                while (records.remaining() >= RECORD_BYTES) {
+                    records.get(id);
+                    byte[] filter = new byte[FILTER_BYTES];
+                    records.get(filter);
+                    filters.put(bytesToHex(id), filter);
+                }
+            }
+        }
+        return filters;
+    }
+
+    /** Returns the filter bits chosen for PATH: h1 + I * h2 for each I
+     *  below HASHES, where h1 is the FNV-1a hash of PATH and h2 is derived
+     *  from it. */
+    private static int[] bits(String path) {
+        long h1 = hash(path);
+        long h2 = mix(h1) | 1;
+        int[] bits = new int[HASHES];
+        for (int i = 0; i < HASHES; i += 1) {
+            bits[i] = (int) Long.remainderUnsigned(h1 + i * h2, FILTER_BYTES * 8);
+        }
+        return bits;
+    }
+
+    /** Returns the 64-bit FNV-1a hash of PATH in UTF-8. */
+    private static long hash(String path) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /** Scrambles the bits of X (the SplitMix64 finalizer). */
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+}
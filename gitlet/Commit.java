@@ -1,5 +1,7 @@
 package gitlet;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -27,7 +29,20 @@ public class Commit implements Serializable {
     private String message;
     private ArrayList<String> parentIds;
     private Date timestamp;
-    public TreeMap<String, String> blobs;
+
+    /**
+     * The files of this commit, mapping paths to blob ids. Commits written
+     * by an ObjectStore keep this map in a separate tree object, named by
+     * treeId, and leave it out of their own file, so reading a commit for
+     * its message or parents does not deserialize its file list. It is read
+     * from the tree on the first call to getBlobs(). Older commits carry the
+     * map inline and have no treeId.
+     */
+    private TreeMap<String, String> blobs;
+    private String treeId;
+
+    /** The store this commit was read from, used to load its tree. */
+    private transient ObjectStore store;
 
     /**
      * Creates a new commit with the given message and parent commit ID.
@@ -36,9 +51,24 @@ public class Commit implements Serializable {
      * @param parentId  The ID of the parent commit.
      */
     public Commit(String message, String parentId) {
+        this(message, parentId, null);
+    }
+
+    /**
+     * Creates a merge commit with the given message, whose first parent is
+     * the current commit and whose second parent is the merged-in commit.
+     *
+     * @param message         The commit message.
+     * @param parentId        The ID of the first parent commit.
+     * @param mergedParentId  The ID of the second parent commit, or null.
+     */
+    public Commit(String message, String parentId, String mergedParentId) {
         this.message = message;
         this.parentIds = new ArrayList<>();
         this.parentIds.add(parentId);
+        if (mergedParentId != null) {
+            this.parentIds.add(mergedParentId);
+        }
         this.blobs = new TreeMap<>();
         if (Repository.isDirEmpty(Repository.COMMITS_DIR)) {
             // Create the initial commit
@@ -94,9 +124,43 @@ public class Commit implements Serializable {
 
 
     public TreeMap<String, String> getBlobs() {
+        if (blobs == null && treeId != null) {
+            blobs = store.readTree(treeId);
+        }
         return blobs;
     }
 
+    /**
+     * Returns the id of the tree object holding this commit's files, or
+     * null if the commit has not been stored or stores them inline.
+     */
+    public String getTreeId() {
+        return treeId;
+    }
+
+    /**
+     * Records that this commit's files are stored in tree TREEID of STORE.
+     */
+    void setTree(ObjectStore store, String treeId) {
+        this.store = store;
+        this.treeId = treeId;
+    }
+
+    /**
+     * Leaves the file map out of the serialized commit once it has a tree.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        TreeMap<String, String> files = blobs;
+        if (treeId != null) {
+            blobs = null;
+        }
+        try {
+            out.defaultWriteObject();
+        } finally {
+            blobs = files;
+        }
+    }
+
     public TreeMap copyThisBlobs (TreeMap copy) {
         this.blobs = new TreeMap<>();
         for (Object key: copy.keySet()) {
@@ -0,0 +1,183 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static gitlet.Utils.*;
+
+/** The parents of every commit, cached in .gitlet/commit-graph so history
+ *  can be walked without deserializing commits.
+ *
+ *  The file is a sequence of RECORD_BYTES records, each a 20-byte commit
+ *  id followed by two 20-byte parent ids, all zeros where a commit has
+ *  fewer parents. New commits are appended as they are stored. The whole
+ *  file is read into memory on first use; if it is missing it is rebuilt
+ *  from the commit journal, and a commit it does not know is read from the
+ *  object store and added. Only a process holding the repository lock
+ *  writes the file, and appends start at a record boundary, so a torn
+ *  record left by a crash is overwritten rather than shifting the rest.
+ *
+ *  @author Gabriel and Umar
+ */
+class CommitGraph {
+
+    /** Length in bytes of a binary SHA-1. */
+    private static final int ID_BYTES = UID_LENGTH / 2;
+
+    /** Length in bytes of one record. */
+    private static final int RECORD_BYTES = 3 * ID_BYTES;
+
+    /** The graph file. */
+    private final File file;
+
+    /** Reads commits the graph does not know. */
+    private final ObjectStore objects;
+
+    /** The parent ids of each commit, first parent first, or null before
+     *  the file is loaded. */
+    private Map<String, String[]> parents;
+
+    /** The graph of the repository whose .gitlet directory is GITLETDIR,
+     *  whose commits are read from OBJECTS. */
+    CommitGraph(File gitletDir, ObjectStore objects) {
+        this.file = join(gitletDir, "commit-graph");
+        this.objects = objects;
+    }
+
+    /** Returns the parent ids of commit ID, first parent first. The
+     *  initial commit has none. */
+    synchronized String[] parents(String id) {
+        String[] result = graph().get(id);
+        if (result == null) {
+            Commit commit = objects.readCommit(id);
+            result = parentsOf(commit);
+            parents.put(id, result);
+            if (objects.lockHeld()) {
+                appendRecord(commit.getId(), result);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the commit N first parents back from commit ID, or null if
+     *  the history is shorter than that. */
+    String firstParent(String id, int n) {
+        for (int i = 0; i < n && id != null; i += 1) {
+            String[] ps = parents(id);
+            id = ps.length == 0 ? null : ps[0];
+        }
+        return id;
+    }
+
+    /** Returns commit ID and all of its ancestors. */
+    Set<String> ancestors(String id) {
+        Set<String> seen = new HashSet<>();
+        Deque<String> toVisit = new ArrayDeque<>();
+        toVisit.push(id);
+        while (!toVisit.isEmpty()) {
+            String next = toVisit.pop();
+            if (seen.add(next)) {
+                for (String parent : parents(next)) {
+                    toVisit.push(parent);
+                }
+            }
+        }
+        return seen;
+    }
+
+    /** Records COMMIT, which has just been stored. */
+    synchronized void add(Commit commit) {
+        String[] result = parentsOf(commit);
+        if (parents != null) {
+            parents.put(commit.getId(), result);
+        }
+        // without a file the next load rebuilds it, including COMMIT
+        if (objects.lockHeld() && file.exists()) {
+            appendRecord(commit.getId(), result);
+        }
+    }
+
+    /** Rebuilds the graph from the commits in the journal, and writes it
+     *  out if this process holds the repository lock. */
+    synchronized void rebuild() {
+        parents = new HashMap<>();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        List<String> ids = objects.journal().between(null, null);
+        for (String id : ids) {
+            if (objects.hasCommit(id)) {
+                String[] result = parentsOf(objects.readCommit(id));
+                parents.put(id, result);
+                bytes.writeBytes(record(id, result));
+            }
+        }
+        if (objects.lockHeld()) {
+            replaceContents(file, bytes.toByteArray());
+        }
+    }
+
+    /** Loads the graph file, rebuilding it if needed, and returns it. */
+    private synchronized Map<String, String[]> graph() {
+        if (parents == null) {
+            if (!file.exists()) {
+                rebuild();
+                return parents;
+            }
+            ByteBuffer records = ByteBuffer.wrap(readContents(file));
+            int count = records.capacity() / RECORD_BYTES;
+            parents = new HashMap<>(count * 2);
+            byte[] zero = new byte[ID_BYTES];
+            byte[][] ids = new byte[3][ID_BYTES];
+            for (int i = 0; i < count; i += 1) {
+                for (byte[] id : ids) {
+                    records.get(id);
+                }
+                int n = Arrays.equals(ids[1], zero) ? 0
+                        : Arrays.equals(ids[2], zero) ? 1 : 2;
+                String[] result = new String[n];
+                for (int j = 0; j < n; j += 1) {
+                    result[j] = bytesToHex(ids[j + 1]);
+                }
+                parents.put(bytesToHex(ids[0]), result);
+            }
+        }
+        return parents;
+    }
+
+    /** Returns the parent ids of COMMIT without the null the initial
+     *  commit records. */
+    private static String[] parentsOf(Commit commit) {
+        return commit.getParentIds().stream().filter(p -> p != null).toArray(String[]::new);
+    }
+
+    private static byte[] record(String id, String[] parentIds) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+        record.put(hexToBytes(id));
+        for (int i = 0; i < 2 && i < parentIds.length; i += 1) {
+            record.put(hexToBytes(parentIds[i]));
+        }
+        return record.array();
+    }
+
+    private void appendRecord(String id, String[] parentIds) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // a torn record left by a crash is overwritten
+            channel.write(ByteBuffer.wrap(record(id, parentIds)),
+                    channel.size() - channel.size() % RECORD_BYTES);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+}
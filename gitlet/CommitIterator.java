@@ -0,0 +1,64 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+/** Iterates over a commit and its first-parent ancestors, newest first.
+ *  Each commit is read from the object store only when next() asks for it,
+ *  so a caller that stops early never pays for the rest of the history.
+ *  Given a filter on commit ids, the walk follows the commit graph instead
+ *  and reads only the commits the filter accepts.
+ *
+ *  @author Gabriel and Umar
+ */
+class CommitIterator implements Iterator<Commit> {
+
+    /** Where commits are read from. */
+    private final ObjectStore objects;
+
+    /** Which commits to return, or null for all of them. */
+    private final Predicate<String> filter;
+
+    /** The id of the commit next() returns, or null at the end. */
+    private String nextId;
+
+    /** Iterates from commit STARTID back through its first parents, reading
+     *  commits from OBJECTS. */
+    CommitIterator(ObjectStore objects, String startId) {
+        this(objects, startId, null);
+    }
+
+    /** Iterates over the commits from STARTID back through its first
+     *  parents whose ids FILTER accepts, reading them from OBJECTS. */
+    CommitIterator(ObjectStore objects, String startId, Predicate<String> filter) {
+        this.objects = objects;
+        this.filter = filter;
+        this.nextId = skip(startId);
+    }
+
+    /** Returns the first of ID and its first-parent ancestors that the
+     *  filter accepts, or null. */
+    private String skip(String id) {
+        while (filter != null && id != null && !filter.test(id)) {
+            id = objects.graph().firstParent(id, 1);
+        }
+        return id;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return nextId != null;
+    }
+
+    @Override
+    public Commit next() {
+        if (nextId == null) {
+            throw new NoSuchElementException();
+        }
+        Commit commit = objects.readCommit(nextId);
+        // the initial commit has no parents, recorded as a single null
+        nextId = skip(commit.getParentIds().isEmpty() ? null : commit.getParentIds().get(0));
+        return commit;
+    }
+}
@@ -0,0 +1,153 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/** An append-only log of every commit in the repository, in the order they
+ *  were made, kept in .gitlet/commit-journal.
+ *
+ *  Each record is RECORD_BYTES long: the 20-byte commit id followed by a
+ *  long sort key, the commit time in milliseconds. Records are fixed-size,
+ *  so the record at index i starts at offset i * RECORD_BYTES and the file
+ *  can be bisected by time. To keep the keys sorted even if the clock runs
+ *  backwards, a key is never less than the one before it; callers that need
+ *  exact times check them on the commits they read.
+ *
+ *  The journal only ever grows by appending, which makes it a convenient
+ *  source for rebuilding other indexes. If it is missing, as in a
+ *  repository made by an older Gitlet, it is rebuilt from the commits
+ *  directory. A process without the repository lock keeps the rebuilt
+ *  journal in memory, since a writer may append a commit meanwhile; the
+ *  lock holder writes it to a temporary file and renames it into place.
+ *
+ *  @author Gabriel and Umar
+ */
+class CommitJournal {
+
+    /** Length in bytes of a binary SHA-1. */
+    private static final int ID_BYTES = UID_LENGTH / 2;
+
+    /** Length in bytes of one record. */
+    static final int RECORD_BYTES = ID_BYTES + 8;
+
+    /** The journal file. */
+    private final File file;
+
+    /** Where commits are stored. */
+    private final File commitsDir;
+
+    /** Reads commits when the journal is rebuilt. */
+    private final ObjectStore objects;
+
+    /** The journal of the repository whose .gitlet directory is GITLETDIR,
+     *  whose commits are read from OBJECTS. */
+    CommitJournal(File gitletDir, ObjectStore objects) {
+        this.file = join(gitletDir, "commit-journal");
+        this.commitsDir = join(gitletDir, "commits");
+        this.objects = objects;
+    }
+
+    /** Records COMMIT, which has just been stored, at the end of the
+     *  journal. */
+    synchronized void append(Commit commit) {
+        if (!file.exists()) {
+            rebuild();
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size() - channel.size() % RECORD_BYTES;
+            long key = commit.getTimestamp().getTime();
+            if (size > 0) {
+                ByteBuffer last = ByteBuffer.allocate(8);
+                channel.read(last, size - 8);
+                key = Math.max(key, last.getLong(0));
+            }
+            ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+            record.put(hexToBytes(commit.getId())).putLong(key).flip();
+            // a torn record left by a crash is overwritten
+            channel.write(record, size);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Rewrites the journal from the commits that are stored, ordered by
+     *  time. */
+    synchronized void rebuild() {
+        replaceContents(file, records());
+    }
+
+    /** Returns the records of the commits that are stored, ordered by
+     *  time. */
+    private byte[] records() {
+        List<Commit> commits = new ArrayList<>();
+        for (String id : plainFilenamesIn(commitsDir)) {
+            commits.add(objects.readCommit(id));
+        }
+        commits.sort(Comparator.comparing(Commit::getTimestamp));
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(commits.size() * RECORD_BYTES);
+            DataOutputStream out = new DataOutputStream(bytes);
+            for (Commit commit : commits) {
+                out.write(hexToBytes(commit.getId()));
+                out.writeLong(commit.getTimestamp().getTime());
+            }
+            return bytes.toByteArray();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Returns the ids of the commits whose sort keys lie between SINCE and
+     *  UNTIL inclusive, oldest first. Either bound may be null. */
+    List<String> between(Date since, Date until) {
+        ByteBuffer records;
+        if (file.exists()) {
+            records = ByteBuffer.wrap(readContents(file));
+        } else if (objects.lockHeld()) {
+            rebuild();
+            records = ByteBuffer.wrap(readContents(file));
+        } else {
+            records = ByteBuffer.wrap(records());
+        }
+        int count = records.capacity() / RECORD_BYTES;
+        int start = since == null ? 0 : firstAtOrAfter(records, count, since.getTime());
+        int end = until == null ? count : firstAtOrAfter(records, count, until.getTime() + 1);
+
+        List<String> ids = new ArrayList<>(Math.max(end - start, 0));
+        byte[] id = new byte[ID_BYTES];
+        for (int i = start; i < end; i += 1) {
+            records.get(i * RECORD_BYTES, id);
+            ids.add(bytesToHex(id));
+        }
+        return ids;
+    }
+
+    /** Returns the index of the first of the COUNT records in RECORDS whose
+     *  key is at least KEY, or COUNT if there is none. */
+    private static int firstAtOrAfter(ByteBuffer records, int count, long key) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (records.getLong(mid * RECORD_BYTES + ID_BYTES) < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,118 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Properties;
+
+/** Repository settings, stored as KEY=VALUE lines in .gitlet/config.
+ *  A missing file or key means the built-in default is used.
+ *
+ *  @author Gabriel and Umar
+ */
+class Config {
+
+    /** Compression applied to newly written objects: "deflate" or "none". */
+    static final String COMPRESSION = "core.compression";
+
+    /** Deflate level between 0 and 9, or -1 for the JDK default. */
+    static final String COMPRESSION_LEVEL = "core.compressionLevel";
+
+    /** How checkout materializes files: "copy" or "link". */
+    static final String CHECKOUT_MODE = "checkout.mode";
+
+    /** The file backing this configuration. */
+    private final File file;
+
+    /** The settings read from FILE. */
+    private final Properties properties = new Properties();
+
+    /** Loads the configuration of the repository whose .gitlet directory
+     *  is GITLETDIR. */
+    Config(File gitletDir) {
+        file = Utils.join(gitletDir, "config");
+        if (file.isFile()) {
+            try (Reader in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                properties.load(in);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp);
+            }
+        }
+    }
+
+    /** Returns the value of KEY, or DEFAULTVALUE if it is not set. */
+    String get(String key, String defaultValue) {
+        return properties.getProperty(key, defaultValue);
+    }
+
+    /** Returns the value of KEY as an int, or DEFAULTVALUE if it is not set
+     *  or is not a number. */
+    int getInt(String key, int defaultValue) {
+        try {
+            return Integer.parseInt(get(key, Integer.toString(defaultValue)).trim());
+        } catch (NumberFormatException excp) {
+            return defaultValue;
+        }
+    }
+
+    /** Returns the value of KEY as an int, or DEFAULTVALUE if it is not set,
+     *  is not a number or is outside MIN to MAX, as a value written by hand
+     *  may be. */
+    int getInt(String key, int defaultValue, int min, int max) {
+        int value = getInt(key, defaultValue);
+        return value >= min && value <= max ? value : defaultValue;
+    }
+
+    /** Returns why VALUE is not a valid value for KEY, or null if it is.
+     *  Keys Gitlet does not know take any value. */
+    static String check(String key, String value) {
+        switch (key) {
+            case COMPRESSION:
+                return value.equals("deflate") || value.equals("none")
+                        ? null : COMPRESSION + " must be deflate or none.";
+            case COMPRESSION_LEVEL:
+                return isIntBetween(value, -1, 9)
+                        ? null : COMPRESSION_LEVEL + " must be a number from -1 to 9.";
+            case CHECKOUT_MODE:
+                return value.equals("copy") || value.equals("link")
+                        ? null : CHECKOUT_MODE + " must be copy or link.";
+            case Reflog.SIZE:
+                return isIntBetween(value, 1, Integer.MAX_VALUE)
+                        ? null : Reflog.SIZE + " must be a positive number.";
+            default:
+                return null;
+        }
+    }
+
+    private static boolean isIntBetween(String value, int min, int max) {
+        try {
+            int n = Integer.parseInt(value.trim());
+            return n >= min && n <= max;
+        } catch (NumberFormatException excp) {
+            return false;
+        }
+    }
+
+    /** Sets KEY to VALUE and writes the configuration back to disk. */
+    void set(String key, String value) {
+        properties.setProperty(key, value);
+        save();
+    }
+
+    /** Removes KEY and writes the configuration back to disk. */
+    void unset(String key) {
+        properties.remove(key);
+        save();
+    }
+
+    private void save() {
+        try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            properties.store(out, null);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+}
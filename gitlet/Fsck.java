@@ -0,0 +1,281 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+import static gitlet.Utils.*;
+
+/** Checks the integrity of a repository.
+ *
+ *  Every object is decoded and rehashed, in parallel, and must hash to the
+ *  id it is stored under; commits, trees and tags must also deserialize,
+ *  and every object they point at must exist. Then each branch, the HEAD
+ *  and each tag must name an existing object.
+ *
+ *  A commit's id is not a hash of its file, so a commit is instead checked
+ *  to deserialize to a commit with that id. Blobs written before
+ *  content-only addressing were named by the hash of their path followed
+ *  by their contents; a blob that does not match its id is looked up under
+ *  each path that uses it before it is reported.
+ *
+ *  An incremental check only looks at objects written since the last check
+ *  that found no problems, recorded in .gitlet/fsck-stamp, since objects
+ *  never change once written. Refs are always checked.
+ *
+ *  @author Gabriel and Umar
+ */
+class Fsck {
+
+    /** Slack for file systems that keep modification times in whole
+     *  seconds, so an object written just before a check started is
+     *  checked again next time. */
+    private static final long STAMP_SLACK_MS = 1000;
+
+    /** The objects being checked. */
+    private final ObjectStore objects;
+
+    /** Where the objects live. */
+    private final File gitletDir;
+
+    /** When the last clean check started. */
+    private final File stampFile;
+
+    /** Problems found so far, in no order. */
+    private final Queue<String> problems = new ConcurrentLinkedQueue<>();
+
+    /** Blobs that do not hash to their id, by id, until shown to be old
+     *  path-and-contents blobs. */
+    private final Map<String, File> suspectBlobs = new ConcurrentHashMap<>();
+
+    /** How many objects were checked. */
+    private final LongAdder checkedObjects = new LongAdder();
+
+    /** How many decoded bytes were hashed. */
+    private final LongAdder checkedBytes = new LongAdder();
+
+    /** A check of the repository whose .gitlet directory is GITLETDIR and
+     *  whose objects are OBJECTS. */
+    Fsck(File gitletDir, ObjectStore objects) {
+        this.gitletDir = gitletDir;
+        this.objects = objects;
+        this.stampFile = join(gitletDir, "fsck-stamp");
+    }
+
+    /** Checks the objects, all of them or, if INCREMENTAL, those written
+     *  since the last clean check, and then the refs in REFS and TAGS.
+     *  Returns the problems found, sorted. */
+    List<String> run(boolean incremental, Refs refs, Tags tags) {
+        long start = System.currentTimeMillis();
+        long since = 0;
+        if (incremental && stampFile.isFile()) {
+            try {
+                since = Long.parseLong(readContentsAsString(stampFile).trim());
+            } catch (NumberFormatException excp) {
+                since = 0;
+            }
+        }
+
+        List<File[]> work = new ArrayList<>();
+        collect("blobs", since, work);
+        collect("trees", since, work);
+        collect("commits", since, work);
+        collect("tags", since, work);
+        work.parallelStream().forEach(task -> check(task[0].getName(), task[1]));
+        if (!suspectBlobs.isEmpty()) {
+            clearOldBlobs();
+        }
+        for (String id : suspectBlobs.keySet()) {
+            problems.add("corrupt blob " + id + ": contents do not match its id");
+        }
+        checkRefs(refs, tags);
+
+        List<String> sorted = new ArrayList<>(problems);
+        Collections.sort(sorted);
+        if (sorted.isEmpty()) {
+            writeContents(stampFile, Long.toString(start - STAMP_SLACK_MS));
+        }
+        return sorted;
+    }
+
+    /** Returns how many objects the last run checked. */
+    long checkedObjects() {
+        return checkedObjects.sum();
+    }
+
+    /** Returns how many decoded bytes the last run hashed. */
+    long checkedBytes() {
+        return checkedBytes.sum();
+    }
+
+    /** Adds to WORK a pair of the directory and the file of each object in
+     *  directory KIND modified at or after SINCE. */
+    private void collect(String kind, long since, List<File[]> work) {
+        File dir = join(gitletDir, kind);
+        List<String> names = plainFilenamesIn(dir);
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            File file = join(dir, name);
+            if (since == 0 || file.lastModified() >= since) {
+                work.add(new File[]{dir, file});
+            }
+        }
+    }
+
+    /** Checks FILE, an object in directory DIRNAME. */
+    private void check(String dirName, File file) {
+        String kind = dirName.substring(0, dirName.length() - 1);
+        String id = file.getName();
+        byte[] contents;
+        try {
+            contents = objects.readDecoded(file);
+        } catch (RuntimeException excp) {
+            problems.add("unreadable " + kind + " " + id);
+            return;
+        }
+        checkedObjects.increment();
+        checkedBytes.add(contents.length);
+
+        try {
+            switch (kind) {
+                case "blob":
+                    if (!sha1(contents).equals(id)) {
+                        suspectBlobs.put(id, file);
+                    }
+                    break;
+                case "tree":
+                    if (!sha1(contents).equals(id)) {
+                        problems.add("corrupt tree " + id + ": contents do not match its id");
+                        return;
+                    }
+                    checkFiles("tree " + id, deserialize(contents, Map.class));
+                    break;
+                case "commit":
+                    checkCommit(id, deserialize(contents, Commit.class));
+                    break;
+                case "tag":
+                    if (!sha1(contents).equals(id)) {
+                        problems.add("corrupt tag " + id + ": contents do not match its id");
+                        return;
+                    }
+                    Tag tag = deserialize(contents, Tag.class);
+                    if (!objects.commitFile(tag.getCommitId()).isFile()) {
+                        problems.add("tag object " + id + " points to missing commit " + tag.getCommitId());
+                    }
+                    break;
+                default:
+                    break;
+            }
+        } catch (RuntimeException excp) {
+            problems.add("corrupt " + kind + " " + id + ": cannot be parsed");
+        }
+    }
+
+    /** Checks that COMMIT, stored as ID, has that id and that its parents
+     *  and files exist. */
+    private void checkCommit(String id, Commit commit) {
+        if (!id.equals(commit.getId())) {
+            problems.add("corrupt commit " + id + ": holds commit " + commit.getId());
+            return;
+        }
+        for (String parentId : commit.getParentIds()) {
+            // the initial commit records a null parent
+            if (parentId != null && !objects.commitFile(parentId).isFile()) {
+                problems.add("commit " + id + " points to missing parent " + parentId);
+            }
+        }
+        if (commit.getTreeId() != null) {
+            if (!objects.treeFile(commit.getTreeId()).isFile()) {
+                problems.add("commit " + id + " points to missing tree " + commit.getTreeId());
+            }
+        } else {
+            checkFiles("commit " + id, commit.getBlobs());
+        }
+    }
+
+    /** Checks that every blob in FILES, a map from paths to blob ids held
+     *  by OWNER, exists. */
+    private void checkFiles(String owner, Map<?, ?> files) {
+        for (Map.Entry<?, ?> entry : files.entrySet()) {
+            String blobId = (String) entry.getValue();
+            if (!objects.blobFile(blobId).isFile()) {
+                problems.add(owner + " points to missing blob " + blobId + " for " + entry.getKey());
+            }
+        }
+    }
+
+    /** Removes from the suspect blobs those that hash to their id when
+     *  prefixed with a path some commit stores them under. */
+    private void clearOldBlobs() {
+        List<String> commitIds = plainFilenamesIn(join(gitletDir, "commits"));
+        commitIds.parallelStream().forEach(commitId -> {
+            Map<String, String> files;
+            try {
+                files = objects.readCommit(commitId).getBlobs();
+            } catch (RuntimeException excp) {
+                // already reported
+                return;
+            }
+            for (Map.Entry<String, String> entry : files.entrySet()) {
+                File file = suspectBlobs.get(entry.getValue());
+                if (file != null) {
+                    String contents = new String(objects.readDecoded(file), StandardCharsets.UTF_8);
+                    if (sha1(entry.getKey() + contents).equals(entry.getValue())) {
+                        suspectBlobs.remove(entry.getValue());
+                    }
+                }
+            }
+        });
+    }
+
+    /** Checks that the HEAD, every branch in REFS and every tag in TAGS
+     *  name existing objects. */
+    private void checkRefs(Refs refs, Tags tags) {
+        String head = refs.head();
+        if (!isCommit(head)) {
+            problems.add("HEAD points to missing commit " + head);
+        }
+        String current = refs.currentBranch();
+        if (!refs.exists(current)) {
+            problems.add("current branch " + current + " does not exist");
+        }
+        for (String name : refs.names()) {
+            String id = refs.resolve(name);
+            if (!isCommit(id)) {
+                problems.add("branch " + name + " points to missing commit " + id);
+            }
+        }
+        for (Map.Entry<String, String> entry : tags.all().entrySet()) {
+            String id = entry.getValue();
+            if (!isCommit(id) && !objects.tagFile(id).isFile()) {
+                problems.add("tag " + entry.getKey() + " points to missing object " + id);
+            }
+        }
+    }
+
+    /** Returns true if ID is a well-formed id of an existing commit. */
+    private boolean isCommit(String id) {
+        return id != null && id.matches("[0-9a-f]{" + UID_LENGTH + "}") && objects.commitFile(id).isFile();
+    }
+
+    /** Returns CONTENTS deserialized as an object of class EXPECTEDCLASS. */
+    private static <T> T deserialize(byte[] contents, Class<T> expectedClass) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(contents))) {
+            return expectedClass.cast(in.readObject());
+        } catch (IOException | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+}
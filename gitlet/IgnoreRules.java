@@ -0,0 +1,263 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static gitlet.Utils.*;
+
+/** The .gitletignore rules in effect in one directory of a working tree.
+ *
+ *  Each line of a .gitletignore file is a pattern, as in Git: blank lines
+ *  and lines starting with '#' are skipped, a leading '!' re-includes what
+ *  an earlier pattern excluded, a trailing '/' matches only directories,
+ *  and a pattern containing any other '/' is anchored to the directory of
+ *  its .gitletignore file. Otherwise it matches a name at any depth.
+ *  Within a component, '*' matches any run of characters and '?' any one;
+ *  a whole component of "**" matches any number of directories. When
+ *  several patterns match, the last one wins, and patterns from deeper
+ *  files come after those of their ancestors.
+ *
+ *  Patterns are compiled once into lists of path components. An
+ *  IgnoreRules holds, for its directory, the partially matched patterns
+ *  that could still match something inside it, indexed by the literal
+ *  component they expect next. Deciding whether a name is ignored is a
+ *  hash lookup plus a check of the wildcard components, and entering a
+ *  subdirectory derives that subdirectory's rules from its parent's
+ *  without looking at any path twice. Ignored directories are pruned by
+ *  the caller, so nothing below them is ever listed.
+ *
+ *  @author Gabriel and Umar
+ */
+class IgnoreRules {
+
+    /** The name of an ignore file. */
+    static final String FILE_NAME = ".gitletignore";
+
+    /** A path component matching any number of directories. */
+    private static final String ANY_DIRS = "**";
+
+    /** Pending matches whose next component is a literal name. */
+    private final Map<String, List<Step>> literal = new HashMap<>();
+
+    /** Pending matches whose next component has wildcards. */
+    private final List<Step> wildcard = new ArrayList<>();
+
+    /** How deep this directory lies below the root of the working tree. */
+    private final int depth;
+
+    /** Rules with no patterns at depth DEPTH. */
+    private IgnoreRules(int depth) {
+        this.depth = depth;
+    }
+
+    /** Returns rules that ignore nothing, for the root of a working tree. */
+    static IgnoreRules none() {
+        return new IgnoreRules(0);
+    }
+
+    /** Returns the rules in effect in DIR, a path relative to the working
+     *  tree ROOT, reading the ignore files of ROOT and each directory down
+     *  to DIR's parent. Like enter, this leaves out any ignore file in DIR
+     *  itself, which is read when DIR is listed. */
+    static IgnoreRules at(File root, String dir) {
+        IgnoreRules rules = none();
+        File current = root;
+        if (!dir.isEmpty()) {
+            for (String name : dir.split("/")) {
+                rules = rules.withFile(join(current, FILE_NAME)).enter(name);
+                current = join(current, name);
+            }
+        }
+        return rules;
+    }
+
+    /** Returns these rules plus the patterns in IGNOREFILE, an ignore file
+     *  in this directory, or these rules unchanged if it does not exist. */
+    IgnoreRules withFile(File ignoreFile) {
+        if (!ignoreFile.isFile()) {
+            return this;
+        }
+        IgnoreRules result = copy();
+        String[] lines = readContentsAsString(ignoreFile).split("\\r?\\n");
+        for (int i = 0; i < lines.length; i += 1) {
+            Pattern pattern = Pattern.compile(lines[i], ((long) depth << 32) | i);
+            if (pattern != null) {
+                result.add(new Step(pattern, 0));
+            }
+        }
+        return result;
+    }
+
+    /** Returns true if the entry NAME of this directory is ignored.
+     *  ISDIRECTORY tells whether it is a directory. */
+    boolean isIgnored(String name, boolean isDirectory) {
+        Pattern winner = null;
+        for (Step step : candidates(name)) {
+            if (step.isFinal() && (isDirectory || !step.pattern.directoryOnly)
+                    && (winner == null || step.pattern.order > winner.order)) {
+                winner = step.pattern;
+            }
+        }
+        return winner != null && !winner.negated;
+    }
+
+    /** Returns the rules in effect in the subdirectory NAME, not counting
+     *  any ignore file it contains. */
+    IgnoreRules enter(String name) {
+        IgnoreRules child = new IgnoreRules(depth + 1);
+        for (Step step : candidates(name)) {
+            if (step.component().equals(ANY_DIRS)) {
+                child.add(step);
+            } else if (!step.isFinal()) {
+                child.add(new Step(step.pattern, step.position + 1));
+            }
+        }
+        return child;
+    }
+
+    /** Returns the pending matches that accept NAME as their next
+     *  component. */
+    private List<Step> candidates(String name) {
+        List<Step> result = new ArrayList<>(literal.getOrDefault(name, List.of()));
+        for (Step step : wildcard) {
+            if (step.component().equals(ANY_DIRS) || globMatches(step.component(), name)) {
+                result.add(step);
+            }
+        }
+        return result;
+    }
+
+    /** Adds STEP, and, since "**" may match no directories at all, the step
+     *  past each "**" it starts with. */
+    private void add(Step step) {
+        String component = step.component();
+        if (component.equals(ANY_DIRS)) {
+            wildcard.add(step);
+            if (!step.isFinal()) {
+                add(new Step(step.pattern, step.position + 1));
+            }
+        } else if (component.indexOf('*') >= 0 || component.indexOf('?') >= 0) {
+            wildcard.add(step);
+        } else {
+            literal.computeIfAbsent(component, k -> new ArrayList<>()).add(step);
+        }
+    }
+
+    private IgnoreRules copy() {
+        IgnoreRules result = new IgnoreRules(depth);
+        for (List<Step> steps : literal.values()) {
+            for (Step step : steps) {
+                result.add(step);
+            }
+        }
+        result.wildcard.addAll(wildcard);
+        return result;
+    }
+
+    /** Returns true if NAME matches GLOB, where '*' matches any run of
+     *  characters and '?' any single one. Runs in O(|GLOB| * |NAME|) time
+     *  at worst, since only the most recent '*' is ever retried. */
+    static boolean globMatches(String glob, String name) {
+        int g = 0;
+        int n = 0;
+        int starG = -1;
+        int starN = 0;
+        while (n < name.length()) {
+            if (g < glob.length() && (glob.charAt(g) == '?' || glob.charAt(g) == name.charAt(n))) {
+                g += 1;
+                n += 1;
+            } else if (g < glob.length() && glob.charAt(g) == '*') {
+                starG = g;
+                starN = n;
+                g += 1;
+            } else if (starG >= 0) {
+                g = starG + 1;
+                starN += 1;
+                n = starN;
+            } else {
+                return false;
+            }
+        }
+        while (g < glob.length() && glob.charAt(g) == '*') {
+            g += 1;
+        }
+        return g == glob.length();
+    }
+
+    /** One line of an ignore file, split into path components. */
+    private static class Pattern {
+
+        /** The components to match, outermost first. */
+        private final String[] components;
+
+        /** Whether this pattern re-includes what it matches. */
+        private final boolean negated;
+
+        /** Whether this pattern only matches directories. */
+        private final boolean directoryOnly;
+
+        /** Ranks patterns so that later and deeper ones win. */
+        private final long order;
+
+        private Pattern(String[] components, boolean negated, boolean directoryOnly, long order) {
+            this.components = components;
+            this.negated = negated;
+            this.directoryOnly = directoryOnly;
+            this.order = order;
+        }
+
+        /** Returns the pattern on LINE with rank ORDER, or null if LINE is
+         *  blank or a comment. */
+        static Pattern compile(String line, long order) {
+            String text = line.strip();
+            if (text.isEmpty() || text.startsWith("#")) {
+                return null;
+            }
+            boolean negated = text.startsWith("!");
+            if (negated) {
+                text = text.substring(1);
+            }
+            boolean directoryOnly = text.endsWith("/");
+            while (text.endsWith("/")) {
+                text = text.substring(0, text.length() - 1);
+            }
+            if (text.isEmpty()) {
+                return null;
+            }
+            boolean anchored = text.contains("/");
+            if (text.startsWith("/")) {
+                text = text.substring(1);
+            }
+            // an unanchored pattern may match at any depth
+            String[] components = (anchored ? text : ANY_DIRS + "/" + text).split("/+");
+            return new Pattern(components, negated, directoryOnly, order);
+        }
+    }
+
+    /** A pattern whose components before POSITION have been matched. */
+    private static class Step {
+
+        private final Pattern pattern;
+
+        private final int position;
+
+        Step(Pattern pattern, int position) {
+            this.pattern = pattern;
+            this.position = position;
+        }
+
+        /** Returns the component this step has to match next. */
+        String component() {
+            return pattern.components[position];
+        }
+
+        /** Returns true if matching this step's component completes the
+         *  pattern. */
+        boolean isFinal() {
+            return position == pattern.components.length - 1;
+        }
+    }
+}
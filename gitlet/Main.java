@@ -1,5 +1,14 @@
 package gitlet;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
 
 /** Driver class for Gitlet, a subset of the Git version-control system.
  *  @author Gabriel and Umar
@@ -15,8 +24,53 @@ public class Main {
             return;
         }
 
-        String firstArg = args[0];
         Repository repository = Repository.load();
+        // commands that change the repository run one at a time
+        RepositoryLock lock = isReadOnly(args[0]) ? null : RepositoryLock.acquire(Repository.GITLET_DIR);
+        repository.setLockHeld(lock != null);
+        try {
+            if (args[0].equals("batch")) {
+                batch(repository, args);
+            } else {
+                run(repository, args);
+            }
+        } finally {
+            try {
+                // whatever happened, keep the ref updates of what finished
+                repository.flush();
+            } finally {
+                if (lock != null) {
+                    lock.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if COMMAND never changes the repository, so it can run
+     * while another command holds the repository lock.
+     */
+    private static boolean isReadOnly(String command) {
+        switch (command) {
+            case "log":
+            case "global-log":
+            case "find":
+            case "status":
+            case "diff":
+            case "blame":
+            case "tags":
+            case "reflog":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Runs the single command ARGS against REPOSITORY.
+     */
+    private static void run(Repository repository, String[] args) {
+        String firstArg = args[0];
 
         switch (firstArg) {
             case "init":
@@ -47,10 +101,7 @@ public class Main {
                 }
                 break;
             case "log":
-                if (validateNumInputs(1, args)) {
-                    repository.log();
-                    return;
-                }
+                log(repository, args);
                 break;
             case "rm":
                 if (validateNumInputs(2, args)) {
@@ -66,10 +117,7 @@ public class Main {
                 }
                 break;
             case "global-log":
-                if (validateNumInputs(1, args)) {
-                    repository.globalLog();
-                    return;
-                }
+                globalLog(repository, args);
                 break;
             case "branch":
                 if (validateNumInputs(2 ,args)) {
@@ -83,6 +131,46 @@ public class Main {
                     repository.find(message);
                 }
                 break;
+            case "diff":
+                if (args.length == 2 && args[1].contains(Revisions.RANGE)) {
+                    int range = args[1].indexOf(Revisions.RANGE);
+                    String from = args[1].substring(0, range);
+                    String to = args[1].substring(range + Revisions.RANGE.length());
+                    repository.diff(from.isEmpty() ? Revisions.HEAD : from, to.isEmpty() ? Revisions.HEAD : to);
+                } else if (args.length == 2) {
+                    repository.diff(args[1], Revisions.HEAD);
+                } else if (validateNumInputs(3, args)) {
+                    repository.diff(args[1], args[2]);
+                }
+                break;
+            case "blame":
+                if (args.length == 2) {
+                    repository.blame(Revisions.HEAD, args[1]);
+                } else if (validateNumInputs(3, args)) {
+                    repository.blame(args[1], args[2]);
+                }
+                break;
+            case "tag":
+                tag(repository, args);
+                break;
+            case "tags":
+                if (validateNumInputs(1, args)) {
+                    repository.listTags();
+                }
+                break;
+            case "stash":
+                stash(repository, args);
+                break;
+            case "cherry-pick":
+                if (validateNumInputs(2, args)) {
+                    repository.cherryPick(args[1]);
+                }
+                break;
+            case "rebase":
+                if (validateNumInputs(2, args)) {
+                    repository.rebase(args[1]);
+                }
+                break;
             case "switch":
                 if (validateNumInputs(2, args)) {
                     String branchName = args[1];
@@ -95,12 +183,91 @@ public class Main {
                     repository.reset(id);
                 }
                 break;
+            case "reflog":
+                if (args.length == 1) {
+                    repository.reflog(Reflog.HEAD);
+                } else if (validateNumInputs(2, args)) {
+                    repository.reflog(args[1]);
+                }
+                break;
+            case "merge":
+                if (validateNumInputs(2, args)) {
+                    repository.merge(args[1]);
+                }
+                break;
+            case "add-remote":
+                if (validateNumInputs(3, args)) {
+                    repository.addRemote(args[1], args[2]);
+                }
+                break;
+            case "rm-remote":
+                if (validateNumInputs(2, args)) {
+                    repository.removeRemote(args[1]);
+                }
+                break;
+            case "push":
+                if (validateNumInputs(3, args)) {
+                    repository.push(args[1], args[2]);
+                }
+                break;
+            case "fetch":
+                if (validateNumInputs(3, args)) {
+                    repository.fetch(args[1], args[2]);
+                }
+                break;
+            case "pull":
+                if (validateNumInputs(3, args)) {
+                    repository.pull(args[1], args[2]);
+                }
+                break;
             case "rm-branch":
                 if (validateNumInputs(2, args)) {
                     String name = args[1];
                     repository.removeBranch(name);
                 }
                 break;
+            case "gc":
+                if (args.length == 2 && args[1].equals("--prune=now")) {
+                    repository.gc(true);
+                } else if (validateNumInputs(1, args)) {
+                    repository.gc(false);
+                }
+                break;
+            case "fsck":
+                if (args.length == 2 && args[1].equals("--incremental")) {
+                    repository.fsck(true);
+                } else if (validateNumInputs(1, args)) {
+                    repository.fsck(false);
+                }
+                break;
+            case "migrate-blobs":
+                if (validateNumInputs(1, args)) {
+                    repository.migrateBlobs();
+                }
+                break;
+            case "config":
+                if (args.length == 2) {
+                    repository.config(args[1], null);
+                } else if (validateNumInputs(3, args)) {
+                    repository.config(args[1], args[2]);
+                }
+                break;
+            case "pack-refs":
+                if (validateNumInputs(1, args)) {
+                    repository.packRefs();
+                }
+                break;
+            case "sparse-checkout":
+                if (args.length > 2 && args[1].equals("set")) {
+                    repository.sparseCheckout(Arrays.asList(args).subList(2, args.length));
+                } else if (args.length == 2 && args[1].equals("disable")) {
+                    repository.sparseCheckout(null);
+                } else if (args.length == 2 && args[1].equals("list")) {
+                    repository.sparseCheckoutList();
+                } else {
+                    System.out.println("Incorrect operands.");
+                }
+                break;
 
             // if the function does not exist:
             default:
@@ -109,6 +276,201 @@ public class Main {
         }
     }
 
+    /**
+     * Runs batch [FILE]: executes the commands in FILE, or on the standard
+     * input, one per line, against a single REPOSITORY so that the JVM and
+     * the repository's caches are shared by all of them. Blank lines and
+     * lines starting with # are skipped, and arguments containing spaces
+     * may be double-quoted. Branch and HEAD updates are written out at the
+     * end, or earlier by a line reading checkpoint. A command that fails
+     * has its error printed and the batch goes on.
+     */
+    private static void batch(Repository repository, String[] args) {
+        if (args.length > 2) {
+            System.out.println("Incorrect operands.");
+            return;
+        }
+        try (BufferedReader in = args.length == 2
+                ? Files.newBufferedReader(Path.of(args[1]))
+                : new BufferedReader(new InputStreamReader(System.in))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                List<String> command = tokenize(line);
+                if (command.isEmpty() || command.get(0).startsWith("#")) {
+                    continue;
+                }
+                if (command.get(0).equals("checkpoint")) {
+                    repository.flush();
+                } else if (command.get(0).equals("batch")) {
+                    System.out.println("Cannot run batch inside a batch.");
+                } else {
+                    try {
+                        run(repository, command.toArray(new String[0]));
+                    } catch (GitletException | IllegalArgumentException excp) {
+                        // one failed command does not lose the others
+                        System.out.println(excp.getMessage());
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            System.out.println("Cannot read " + (args.length == 2 ? args[1] : "standard input") + ".");
+        }
+    }
+
+    /**
+     * Splits LINE into arguments at whitespace. A double-quoted argument may
+     * contain spaces, and a backslash inside quotes escapes the next
+     * character.
+     */
+    static List<String> tokenize(String line) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = null;
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    quoted = false;
+                } else if (c == '\\' && i + 1 < line.length()) {
+                    i += 1;
+                    token.append(line.charAt(i));
+                } else {
+                    token.append(c);
+                }
+            } else if (Character.isWhitespace(c)) {
+                if (token != null) {
+                    tokens.add(token.toString());
+                    token = null;
+                }
+            } else {
+                if (token == null) {
+                    token = new StringBuilder();
+                }
+                if (c == '"') {
+                    quoted = true;
+                } else {
+                    token.append(c);
+                }
+            }
+        }
+        if (token != null) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    /**
+     * Runs log [-n COUNT] [--since DATE] [--until DATE] [--oneline] [REVISION]
+     * [-- PATH].
+     */
+    private static void log(Repository repository, String[] args) {
+        int limit = -1;
+        Date since = null;
+        Date until = null;
+        boolean oneline = false;
+        String revision = null;
+        String path = null;
+        for (int i = 1; i < args.length; i += 1) {
+            String option = args[i];
+            boolean hasValue = i + 1 < args.length;
+            if (option.equals("--") && i + 2 == args.length) {
+                path = args[i + 1];
+                i += 1;
+            } else if (!option.startsWith("-") && revision == null) {
+                revision = option;
+            } else if (option.equals("--oneline")) {
+                oneline = true;
+            } else if (option.equals("-n") && hasValue && args[i + 1].matches("\\d+")) {
+                limit = Integer.parseInt(args[i + 1]);
+                i += 1;
+            } else if (option.equals("--since") && hasValue && Repository.parseDate(args[i + 1]) != null) {
+                since = Repository.parseDate(args[i + 1]);
+                i += 1;
+            } else if (option.equals("--until") && hasValue && Repository.parseDate(args[i + 1]) != null) {
+                until = Repository.parseDate(args[i + 1]);
+                i += 1;
+            } else {
+                System.out.println("Incorrect operands.");
+                return;
+            }
+        }
+        repository.log(limit, since, until, oneline, revision, path);
+    }
+
+    /**
+     * Runs tag NAME [REVISION], tag -m MESSAGE NAME [REVISION] or tag -d
+     * NAME. A name that looks like an option is refused, so a forgotten
+     * operand is not taken as the tag's name.
+     */
+    private static void tag(Repository repository, String[] args) {
+        boolean delete = args.length == 3 && args[1].equals("-d");
+        boolean annotated = (args.length == 4 || args.length == 5) && args[1].equals("-m");
+        boolean lightweight = !delete && !annotated && (args.length == 2 || args.length == 3);
+        int name = annotated ? 3 : delete ? 2 : 1;
+        if (!(delete || annotated || lightweight) || args[name].startsWith("-")) {
+            System.out.println("Incorrect operands.");
+        } else if (delete) {
+            repository.deleteTag(args[name]);
+        } else {
+            String message = annotated ? args[2] : null;
+            repository.tag(args[name], message, args.length > name + 1 ? args[name + 1] : Revisions.HEAD);
+        }
+    }
+
+    /**
+     * Runs stash [push [MESSAGE]], stash pop|apply|drop [INDEX] or stash list.
+     */
+    private static void stash(Repository repository, String[] args) {
+        String action = args.length == 1 ? "push" : args[1];
+        String operand = args.length == 3 ? args[2] : null;
+        if (args.length > 3) {
+            action = "";
+        }
+        switch (action) {
+            case "push":
+                repository.stashPush(operand);
+                break;
+            case "pop":
+                repository.stashApply(operand, true);
+                break;
+            case "apply":
+                repository.stashApply(operand, false);
+                break;
+            case "drop":
+                repository.stashDrop(operand);
+                break;
+            case "list":
+                if (operand == null) {
+                    repository.stashList();
+                } else {
+                    System.out.println("Incorrect operands.");
+                }
+                break;
+            default:
+                System.out.println("Incorrect operands.");
+        }
+    }
+
+    /**
+     * Runs global-log [--since DATE] [--until DATE].
+     */
+    private static void globalLog(Repository repository, String[] args) {
+        Date since = null;
+        Date until = null;
+        for (int i = 1; i < args.length; i += 2) {
+            Date date = i + 1 < args.length ? Repository.parseDate(args[i + 1]) : null;
+            if (args[i].equals("--since") && date != null) {
+                since = date;
+            } else if (args[i].equals("--until") && date != null) {
+                until = date;
+            } else {
+                System.out.println("Incorrect operands.");
+                return;
+            }
+        }
+        repository.globalLog(since, until);
+    }
+
     /**
      * The following method is made as an abstraction for checking if the git tools
      * are called on valid inputs.
@@ -0,0 +1,207 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/** A Bloom filter of the ids of every object in a repository, kept in
+ *  .gitlet/object-filter, so that looking up an object that does not exist
+ *  usually needs no file system access at all.
+ *
+ *  An id is added by setting HASHES bits chosen from the id itself, which
+ *  is already a uniformly distributed hash. mightContain() answers false
+ *  only for ids that were never added; it may answer true for a few that
+ *  were not, about one in a hundred at the sizes used here, so a positive
+ *  answer must still be checked on disk. The filter is rebuilt, twice as
+ *  large, once it holds more ids than it was sized for.
+ *
+ *  The file is
+ *      int MAGIC, int id count, long STAMP, long[] bits,
+ *  where STAMP is the latest modification time of the object directories
+ *  at a point when the filter held every object: taken before listing
+ *  them when it is rebuilt, and after each add otherwise. If a directory
+ *  has changed since, objects were added by another process or by a
+ *  version of Gitlet that does not know about the filter, and it is
+ *  rebuilt from the directories. Only the holder of the repository lock
+ *  writes the file, through a temporary file renamed over it.
+ *
+ *  @author Gabriel and Umar
+ */
+class ObjectFilter {
+
+    /** First int of the filter file ("GBLM"). */
+    private static final int MAGIC = 0x47424C4D;
+
+    /** Length in bytes of the header. */
+    private static final int HEADER_BYTES = 16;
+
+    /** Bits set per id. */
+    private static final int HASHES = 7;
+
+    /** Bits of filter per id it is sized for; with HASHES this gives about
+     *  one false positive in a hundred. */
+    private static final int BITS_PER_ID = 10;
+
+    /** The fewest bits a filter has. */
+    private static final int MIN_BITS = 1 << 16;
+
+    /** The filter file. */
+    private final File file;
+
+    /** The directories whose objects the filter holds. */
+    private final File[] objectDirs;
+
+    /** The bits of the filter, or null before it is loaded. */
+    private long[] bits;
+
+    /** Number of ids added. */
+    private int count;
+
+    /** Whether the filter has changed since it was loaded or written. */
+    private boolean dirty;
+
+    /** The stamp() of the object directories as of which the filter holds
+     *  every stored id. */
+    private long stamp;
+
+    /** A filter, stored in GITLETDIR, of the objects in OBJECTDIRS. */
+    ObjectFilter(File gitletDir, File... objectDirs) {
+        this.file = join(gitletDir, "object-filter");
+        this.objectDirs = objectDirs;
+    }
+
+    /** Returns false if object ID is certainly not stored, and true if it
+     *  may be. */
+    synchronized boolean mightContain(String id) {
+        if (!isObjectId(id)) {
+            return true;
+        }
+        load();
+        for (int i = 0; i < HASHES; i += 1) {
+            long bit = bitIndex(id, i);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Records that object ID is stored. */
+    synchronized void add(String id) {
+        if (!isObjectId(id)) {
+            return;
+        }
+        load();
+        if ((long) (count + 1) * BITS_PER_ID > (long) bits.length * 64) {
+            rebuild();
+        }
+        set(id);
+        count += 1;
+        dirty = true;
+        // only the lock holder adds ids and writes the filter back, so no
+        // other process can have stored an object it lacks
+        stamp = stamp();
+    }
+
+    /** Writes the filter to disk if it has changed. */
+    synchronized void flush() {
+        if (!dirty) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + bits.length * 8);
+        buffer.putInt(MAGIC).putInt(count).putLong(stamp);
+        buffer.asLongBuffer().put(bits);
+        replaceContents(file, buffer.array());
+        dirty = false;
+    }
+
+    /** Rebuilds the filter from the object directories. */
+    synchronized void rebuild() {
+        // taken first, so an object stored during the listing makes the
+        // filter look out of date rather than complete
+        long listed = stamp();
+        List<String> ids = new ArrayList<>();
+        for (File dir : objectDirs) {
+            List<String> names = plainFilenamesIn(dir);
+            if (names != null) {
+                for (String id : names) {
+                    if (isObjectId(id)) {
+                        ids.add(id);
+                    }
+                }
+            }
+        }
+        // room for as many again before the next rebuild
+        long wanted = Math.max(MIN_BITS, 2L * (ids.size() + 1) * BITS_PER_ID);
+        bits = new long[(int) (Long.highestOneBit(wanted - 1) << 1 >>> 6)];
+        for (String id : ids) {
+            set(id);
+        }
+        count = ids.size();
+        stamp = listed;
+        dirty = true;
+    }
+
+    /** Reads the filter file, or rebuilds the filter if it is missing or
+     *  out of date. */
+    private void load() {
+        if (bits != null) {
+            return;
+        }
+        if (file.isFile()) {
+            ByteBuffer buffer = ByteBuffer.wrap(readContents(file));
+            if (buffer.capacity() > HEADER_BYTES && buffer.getInt(0) == MAGIC
+                    && buffer.getLong(8) >= stamp()) {
+                count = buffer.getInt(4);
+                stamp = buffer.getLong(8);
+                bits = new long[(buffer.capacity() - HEADER_BYTES) / 8];
+                buffer.position(HEADER_BYTES);
+                buffer.asLongBuffer().get(bits);
+                return;
+            }
+        }
+        rebuild();
+    }
+
+    private void set(String id) {
+        for (int i = 0; i < HASHES; i += 1) {
+            long bit = bitIndex(id, i);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /** Returns the Ith bit chosen for ID, combining two 64-bit slices of
+     *  the id as h1 + I * h2. */
+    private long bitIndex(String id, int i) {
+        long h1 = Long.parseUnsignedLong(id.substring(0, 16), 16);
+        long h2 = Long.parseUnsignedLong(id.substring(16, 32), 16) | 1;
+        return Long.remainderUnsigned(h1 + i * h2, (long) bits.length * 64);
+    }
+
+    /** Returns true if ID looks like an object id, a 40-digit lowercase
+     *  hexadecimal SHA-1. */
+    private static boolean isObjectId(String id) {
+        if (id.length() != UID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i += 1) {
+            char c = id.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the latest modification time of the object directories. */
+    private long stamp() {
+        long latest = 0;
+        for (File dir : objectDirs) {
+            latest = Math.max(latest, dir.lastModified());
+        }
+        return latest;
+    }
+}
@@ -0,0 +1,531 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import static gitlet.Utils.*;
+
+/** Reads and writes the commits, trees, blobs and annotated tags of a
+ *  repository. A tree is the map from paths to blob ids of a commit,
+ *  stored on its own so that commits stay small; identical maps share one
+ *  tree.
+ *
+ *  Objects may be stored compressed. A compressed object starts with the
+ *  byte MAGIC followed by a method byte; anything else is the raw object.
+ *  MAGIC can never start UTF-8 text, which is all older versions of Gitlet
+ *  wrote, so objects from existing repositories are read unchanged. A raw
+ *  object that happens to start with MAGIC is written with the STORED
+ *  method so that it cannot be mistaken for a compressed one.
+ *
+ *  A raw blob holds exactly the bytes of the file it stores, so checkout
+ *  can hard-link it into the working directory instead of copying, or
+ *  copy it with FileChannel.transferTo, which the kernel can do without
+ *  passing the bytes through the JVM.
+ *
+ *  A store may be written from many threads at once. Every object is
+ *  written to a temporary file and renamed into place, so readers never
+ *  see a partial object. Blobs and trees are immutable, and concurrent
+ *  writes of the same one are merged: the first writer encodes and writes
+ *  it while the others wait for that write instead of repeating it, and
+ *  writes of different objects never wait on each other.
+ *
+ *  Lookups consult a Bloom filter of stored ids first, so asking for an
+ *  object that does not exist, or writing a new one, usually costs no file
+ *  system probe.
+ *
+ *  @author Gabriel and Umar
+ */
+class ObjectStore {
+
+    /** First byte of every object that carries a header. */
+    private static final byte MAGIC = (byte) 0xF7;
+
+    /** Header method: the rest of the file is the object as is. */
+    private static final byte STORED = 0;
+
+    /** Header method: the rest of the file is the deflated object. */
+    private static final byte DEFLATED = 1;
+
+    /** How many commits are kept in memory once read. */
+    private static final int COMMIT_CACHE_SIZE = 4096;
+
+    /** Where commits are stored. */
+    private final File commitsDir;
+
+    /** Where blobs are stored. */
+    private final File blobsDir;
+
+    /** Where trees are stored. */
+    private final File treesDir;
+
+    /** Where annotated tags are stored. */
+    private final File tagsDir;
+
+    /** Where objects are written before being renamed into place. */
+    private final File tmpDir;
+
+    /** Whether new objects are deflated. */
+    private final boolean compress;
+
+    /** The Deflater level used when COMPRESS is true. */
+    private final int level;
+
+    /** Whether checkout hard-links raw blobs instead of copying them. */
+    private final boolean linkCheckouts;
+
+    /** Records every new commit in order. */
+    private final CommitJournal journal;
+
+    /** The parents of every commit. */
+    private final CommitGraph graph;
+
+    /** The ids of every stored object. */
+    private final ObjectFilter filter;
+
+    /** The paths each commit changed. */
+    private final ChangedPaths changedPaths;
+
+    /** Whether this process holds the repository lock. */
+    private volatile boolean lockHeld;
+
+    /** The most recently used commits, by id. Commits never change once
+     *  written, so a long-lived store, as in batch mode, can keep them. */
+    private final Map<String, Commit> commitCache = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Commit> eldest) {
+                    return size() > COMMIT_CACHE_SIZE;
+                }
+            });
+
+    /** Writes of immutable objects in progress, by file path, completed
+     *  when the object is in place. */
+    private final Map<String, CompletableFuture<Void>> inFlight = new ConcurrentHashMap<>();
+
+    /** An object store for the repository whose .gitlet directory is
+     *  GITLETDIR, configured from its config file. */
+    ObjectStore(File gitletDir) {
+        this(gitletDir, new Config(gitletDir));
+    }
+
+    private ObjectStore(File gitletDir, Config config) {
+        this(gitletDir, !config.get(Config.COMPRESSION, "deflate").equals("none"),
+                config.getInt(Config.COMPRESSION_LEVEL, Deflater.DEFAULT_COMPRESSION, -1, 9),
+                config.get(Config.CHECKOUT_MODE, "copy").equals("link"));
+    }
+
+    /** An object store for GITLETDIR that deflates new objects at LEVEL if
+     *  COMPRESS is true, and hard-links raw blobs on checkout if
+     *  LINKCHECKOUTS is true. */
+    ObjectStore(File gitletDir, boolean compress, int level, boolean linkCheckouts) {
+        this.commitsDir = join(gitletDir, "commits");
+        this.blobsDir = join(gitletDir, "blobs");
+        this.treesDir = join(gitletDir, "trees");
+        this.tagsDir = join(gitletDir, "tags");
+        this.tmpDir = join(gitletDir, "tmp");
+        this.compress = compress;
+        this.level = level;
+        this.linkCheckouts = linkCheckouts;
+        this.journal = new CommitJournal(gitletDir, this);
+        this.graph = new CommitGraph(gitletDir, this);
+        this.filter = new ObjectFilter(gitletDir, commitsDir, blobsDir, treesDir, tagsDir);
+        this.changedPaths = new ChangedPaths(gitletDir, this);
+    }
+
+    /** Returns the changed-path filters of the commits in this store. */
+    ChangedPaths changedPaths() {
+        return changedPaths;
+    }
+
+    /** Returns the filter of the ids in this store. */
+    ObjectFilter filter() {
+        return filter;
+    }
+
+    /** Records whether this process holds the lock of the repository.
+     *  Only then are the indexes it builds written back; otherwise they
+     *  are kept in memory, since a writer may be storing objects at the
+     *  same time. */
+    void setLockHeld(boolean lockHeld) {
+        this.lockHeld = lockHeld;
+    }
+
+    /** Returns true if this process holds the repository lock. */
+    boolean lockHeld() {
+        return lockHeld;
+    }
+
+    /** Writes out the indexes this store keeps in memory, if this process
+     *  holds the repository lock. */
+    void flush() {
+        if (lockHeld) {
+            filter.flush();
+        }
+    }
+
+    /** Returns the journal of the commits in this store. */
+    CommitJournal journal() {
+        return journal;
+    }
+
+    /** Returns the parent graph of the commits in this store. */
+    CommitGraph graph() {
+        return graph;
+    }
+
+    /* BLOBS */
+
+    /** Returns the file holding blob ID. */
+    File blobFile(String id) {
+        return join(blobsDir, id);
+    }
+
+    /** Returns true if blob ID is stored. */
+    boolean hasBlob(String id) {
+        return filter.mightContain(id) && blobFile(id).exists();
+    }
+
+    /** Stores CONTENTS as a blob unless it is already present, and returns
+     *  its id, the SHA-1 of CONTENTS. */
+    String writeBlob(byte[] contents) {
+        String id = sha1(contents);
+        writeOnce(id, blobFile(id), () -> encode(contents));
+        return id;
+    }
+
+    /** Returns the contents of blob ID. */
+    byte[] readBlob(String id) {
+        try (InputStream in = openBlob(id)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Returns a stream over the contents of blob ID, decompressing it as
+     *  it is read. */
+    InputStream openBlob(String id) {
+        return openDecoded(blobFile(id));
+    }
+
+    /** Writes the contents of blob ID to TARGET, replacing TARGET if it
+     *  exists, without holding the whole blob in memory. */
+    void copyBlobTo(String id, File target) {
+        try (InputStream in = openBlob(id)) {
+            Files.copy(in, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Creates TARGET, which must not exist, holding the contents of blob
+     *  ID, in the way the checkout.mode setting asks for. */
+    void checkoutBlob(String id, File target) {
+        checkoutBlob(id, target, linkCheckouts);
+    }
+
+    /** Creates TARGET, which must not exist, holding the contents of blob
+     *  ID. If LINK is true and the blob is stored raw, TARGET becomes a
+     *  hard link to it. The blob is made read-only first: the two names
+     *  share one inode, so writing to TARGET in place would corrupt the
+     *  repository. Gitlet itself always deletes a working file before
+     *  replacing it. Otherwise a raw blob is copied with transferTo, and a
+     *  compressed one is inflated as it is copied. */
+    void checkoutBlob(String id, File target, boolean link) {
+        File blob = blobFile(id);
+        try (FileChannel source = FileChannel.open(blob.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer first = ByteBuffer.allocate(1);
+            boolean raw = source.read(first, 0) <= 0 || first.get(0) != MAGIC;
+            if (!raw) {
+                copyBlobTo(id, target);
+                return;
+            }
+            if (link) {
+                try {
+                    blob.setReadOnly();
+                    Files.createLink(target.toPath(), blob.toPath());
+                    return;
+                } catch (IOException | UnsupportedOperationException excp) {
+                    // e.g. a different file system; fall back to copying
+                }
+            }
+            try (FileChannel sink = FileChannel.open(target.toPath(),
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                long size = source.size();
+                for (long done = 0; done < size; ) {
+                    done += source.transferTo(done, size - done, sink);
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /* TREES */
+
+    /** Returns the file holding tree ID. */
+    File treeFile(String id) {
+        return join(treesDir, id);
+    }
+
+    /** Stores FILES, a map from paths to blob ids, as a tree unless an equal
+     *  one is present, and returns its id. */
+    String writeTree(TreeMap<String, String> files) {
+        byte[] tree = serialize(files);
+        String id = sha1(tree);
+        // repositories made before trees existed lack the directory
+        writeOnce(id, treeFile(id), () -> encode(tree));
+        return id;
+    }
+
+    /** Returns the map from paths to blob ids in tree ID. */
+    @SuppressWarnings("unchecked")
+    TreeMap<String, String> readTree(String id) {
+        try (ObjectInputStream in = new ObjectInputStream(openDecoded(treeFile(id)))) {
+            return (TreeMap<String, String>) in.readObject();
+        } catch (IOException | ClassCastException | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /* COMMITS */
+
+    /** Returns the file holding commit ID. */
+    File commitFile(String id) {
+        return join(commitsDir, id);
+    }
+
+    /** Returns true if commit ID is stored. */
+    boolean hasCommit(String id) {
+        return filter.mightContain(id) && commitFile(id).exists();
+    }
+
+    /** Returns the id of a stored commit that starts with PREFIX, or null
+     *  if there is none. */
+    String findCommit(String prefix) {
+        if (prefix.length() == UID_LENGTH) {
+            return hasCommit(prefix) ? prefix : null;
+        }
+        if (prefix.isEmpty()) {
+            return null;
+        }
+        for (String id : plainFilenamesIn(commitsDir)) {
+            if (id.startsWith(prefix)) {
+                return id;
+            }
+        }
+        return null;
+    }
+
+    /** Stores COMMIT under its id, replacing any earlier copy. Its files
+     *  are stored as a separate tree, and a new commit is added to the
+     *  journal and the commit graph. */
+    void writeCommit(Commit commit) {
+        commit.setTree(this, writeTree(commit.getBlobs()));
+        boolean isNew = !hasCommit(commit.getId());
+        install(commitFile(commit.getId()), encode(serialize(commit)));
+        filter.add(commit.getId());
+        commitCache.put(commit.getId(), commit);
+        if (isNew) {
+            indexCommit(commit);
+        }
+    }
+
+    /** Stores ENCODED, an object as another store wrote it, as FILE unless
+     *  that already exists. */
+    void writeRaw(File file, byte[] encoded) {
+        writeOnce(file.getName(), file, () -> encoded);
+    }
+
+    /** Adds commit ID, stored with writeRaw, to the journal, the commit
+     *  graph and the changed-path filters. */
+    void indexCommit(String id) {
+        indexCommit(readCommit(id));
+    }
+
+    private void indexCommit(Commit commit) {
+        synchronized (journal) {
+            journal.append(commit);
+            graph.add(commit);
+        }
+        changedPaths.add(commit);
+    }
+
+    /** Returns commit ID. */
+    Commit readCommit(String id) {
+        Commit cached = commitCache.get(id);
+        if (cached != null) {
+            return cached;
+        }
+        try (ObjectInputStream in = new ObjectInputStream(openDecoded(commitFile(id)))) {
+            Commit commit = (Commit) in.readObject();
+            if (commit.getTreeId() != null) {
+                commit.setTree(this, commit.getTreeId());
+            }
+            commitCache.put(id, commit);
+            return commit;
+        } catch (IOException | ClassCastException | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /* TAGS */
+
+    /** Returns the file holding annotated tag ID. */
+    File tagFile(String id) {
+        return join(tagsDir, id);
+    }
+
+    /** Returns true if annotated tag ID is stored. */
+    boolean hasTag(String id) {
+        return filter.mightContain(id) && tagFile(id).exists();
+    }
+
+    /** Stores TAG unless an equal one is present, and returns its id. */
+    String writeTag(Tag tag) {
+        byte[] contents = serialize(tag);
+        String id = sha1(contents);
+        writeOnce(id, tagFile(id), () -> encode(contents));
+        return id;
+    }
+
+    /** Returns annotated tag ID. */
+    Tag readTag(String id) {
+        try (ObjectInputStream in = new ObjectInputStream(openDecoded(tagFile(id)))) {
+            return (Tag) in.readObject();
+        } catch (IOException | ClassCastException | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Returns the commit a tag ref holding ID names: the tagged commit if
+     *  ID is an annotated tag, and ID itself otherwise. */
+    String peel(String id) {
+        return hasTag(id) ? readTag(id).getCommitId() : id;
+    }
+
+    /* ENCODING */
+
+    /** Writes FILE, immutable object ID, with the bytes ENCODE returns,
+     *  unless it exists. If another thread is already writing FILE, waits
+     *  for it to finish instead. */
+    private void writeOnce(String id, File file, Supplier<byte[]> encode) {
+        if (filter.mightContain(id) && file.exists()) {
+            return;
+        }
+        CompletableFuture<Void> mine = new CompletableFuture<>();
+        CompletableFuture<Void> theirs = inFlight.putIfAbsent(file.getPath(), mine);
+        if (theirs != null) {
+            theirs.join();
+            return;
+        }
+        try {
+            // another writer may have finished between the checks
+            if (!file.exists()) {
+                install(file, encode.get());
+                filter.add(id);
+            }
+            mine.complete(null);
+        } catch (RuntimeException excp) {
+            mine.completeExceptionally(excp);
+            throw excp;
+        } finally {
+            inFlight.remove(file.getPath(), mine);
+        }
+    }
+
+    /** Replaces FILE with BYTES by writing them to a temporary file and
+     *  renaming it into place. */
+    private void install(File file, byte[] bytes) {
+        try {
+            tmpDir.mkdirs();
+            File temp = Files.createTempFile(tmpDir.toPath(), file.getName(), null).toFile();
+            writeContents(temp, bytes);
+            file.getParentFile().mkdirs();
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Returns OBJ as it is stored: deflated if that is enabled and makes it
+     *  smaller, and otherwise raw. */
+    private byte[] encode(byte[] obj) {
+        if (compress) {
+            ByteArrayOutputStream deflated = new ByteArrayOutputStream(obj.length / 2 + 16);
+            deflated.write(MAGIC);
+            deflated.write(DEFLATED);
+            Deflater deflater = new Deflater(level);
+            try (OutputStream out = new DeflaterOutputStream(deflated, deflater)) {
+                out.write(obj);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp);
+            } finally {
+                deflater.end();
+            }
+            if (deflated.size() < obj.length) {
+                return deflated.toByteArray();
+            }
+        }
+        if (obj.length > 0 && obj[0] == MAGIC) {
+            byte[] stored = new byte[obj.length + 2];
+            stored[0] = MAGIC;
+            stored[1] = STORED;
+            System.arraycopy(obj, 0, stored, 2, obj.length);
+            return stored;
+        }
+        return obj;
+    }
+
+    /** Returns the decoded contents of FILE, an object of this store. */
+    byte[] readDecoded(File file) {
+        try (InputStream in = openDecoded(file)) {
+            return in.readAllBytes();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Returns a stream over the decoded contents of FILE. */
+    private InputStream openDecoded(File file) {
+        try {
+            InputStream in = new BufferedInputStream(Files.newInputStream(file.toPath()));
+            in.mark(2);
+            if (in.read() == (MAGIC & 0xFF)) {
+                int method = in.read();
+                if (method == DEFLATED) {
+                    return new InflaterInputStream(in);
+                } else if (method == STORED) {
+                    return in;
+                }
+                in.close();
+                throw new IllegalArgumentException("unknown object encoding in " + file);
+            }
+            in.reset();
+            return in;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+}
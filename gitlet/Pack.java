@@ -0,0 +1,184 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static gitlet.Utils.*;
+
+/** Copies the objects one repository is missing from another as a single
+ *  stream.
+ *
+ *  The sending side walks back from the commit the receiver wants and asks
+ *  the receiver, commit by commit, whether it has it; the walk stops at
+ *  every commit it has, since it then has all of that commit's history
+ *  too. The missing commits, and the trees and blobs they use that the
+ *  receiver does not have, are written as one pack of the form
+ *      int MAGIC, then per object: byte kind, 20-byte id, int length,
+ *      the object as stored,
+ *  ended by the kind END. Objects are copied in their stored encoding, so
+ *  nothing is decompressed on the way, and blobs and trees come before the
+ *  commits that use them, oldest commit first.
+ *
+ *  @author Gabriel and Umar
+ */
+class Pack {
+
+    /** First int of a pack ("GPAK"). */
+    private static final int MAGIC = 0x4750414B;
+
+    /** Length in bytes of a binary SHA-1. */
+    private static final int ID_BYTES = UID_LENGTH / 2;
+
+    /** Kinds of pack entries. */
+    private static final byte END = 0;
+    private static final byte BLOB = 1;
+    private static final byte TREE = 2;
+    private static final byte COMMIT = 3;
+
+    /** The store objects are copied from. */
+    private final ObjectStore from;
+
+    /** The store objects are copied to. */
+    private final ObjectStore to;
+
+    /** Where the pack is written on its way. */
+    private final File packFile;
+
+    /** Copies objects FROM one store TO another through the file
+     *  PACKFILE. */
+    Pack(ObjectStore from, ObjectStore to, File packFile) {
+        this.from = from;
+        this.to = to;
+        this.packFile = packFile;
+    }
+
+    /** Copies commit WANT and everything it needs that the receiving store
+     *  lacks. Returns the number of objects copied. */
+    int send(String want) {
+        List<String> commits = missingCommits(want);
+        if (commits.isEmpty()) {
+            return 0;
+        }
+        try {
+            int count;
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(packFile.toPath()), 1 << 16)) {
+                count = write(commits, new DataOutputStream(out));
+            }
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(packFile.toPath()), 1 << 16)) {
+                read(new DataInputStream(in));
+            }
+            return count;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        } finally {
+            packFile.delete();
+        }
+    }
+
+    /** Returns the commits reachable from WANT that the receiver does not
+     *  have, oldest first. */
+    private List<String> missingCommits(String want) {
+        List<String> missing = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        Deque<String> toVisit = new ArrayDeque<>();
+        toVisit.push(want);
+        while (!toVisit.isEmpty()) {
+            String id = toVisit.pop();
+            // the receiver has this commit, and so all of its ancestors
+            if (!seen.add(id) || to.hasCommit(id)) {
+                continue;
+            }
+            missing.add(id);
+            for (String parent : from.graph().parents(id)) {
+                toVisit.push(parent);
+            }
+        }
+        missing.sort(Comparator.comparing((String id) -> from.readCommit(id).getTimestamp()));
+        return missing;
+    }
+
+    /** Writes COMMITS and the trees and blobs they use that the receiver
+     *  lacks to OUT. Returns the number of objects written. */
+    private int write(List<String> commits, DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        int count = 0;
+        Set<String> sent = new HashSet<>();
+        for (String id : commits) {
+            Commit commit = from.readCommit(id);
+            String treeId = commit.getTreeId();
+            if (treeId != null && !to.treeFile(treeId).exists() && sent.add(treeId)) {
+                for (String blobId : commit.getBlobs().values()) {
+                    if (!to.hasBlob(blobId) && sent.add(blobId)) {
+                        writeEntry(out, BLOB, blobId, from.blobFile(blobId));
+                        count += 1;
+                    }
+                }
+                writeEntry(out, TREE, treeId, from.treeFile(treeId));
+                count += 1;
+            } else if (treeId == null) {
+                for (String blobId : commit.getBlobs().values()) {
+                    if (!to.hasBlob(blobId) && sent.add(blobId)) {
+                        writeEntry(out, BLOB, blobId, from.blobFile(blobId));
+                        count += 1;
+                    }
+                }
+            }
+        }
+        for (String id : commits) {
+            writeEntry(out, COMMIT, id, from.commitFile(id));
+            count += 1;
+        }
+        out.writeByte(END);
+        return count;
+    }
+
+    private static void writeEntry(DataOutputStream out, byte kind, String id, File file) throws IOException {
+        byte[] contents = readContents(file);
+        out.writeByte(kind);
+        out.write(hexToBytes(id));
+        out.writeInt(contents.length);
+        out.write(contents);
+    }
+
+    /** Stores every object in the pack IN in the receiving store. */
+    private void read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw error("Corrupt pack.");
+        }
+        byte[] id = new byte[ID_BYTES];
+        for (byte kind = in.readByte(); kind != END; kind = in.readByte()) {
+            in.readFully(id);
+            byte[] contents = new byte[in.readInt()];
+            in.readFully(contents);
+            String hex = bytesToHex(id);
+            switch (kind) {
+                case BLOB:
+                    to.writeRaw(to.blobFile(hex), contents);
+                    break;
+                case TREE:
+                    to.writeRaw(to.treeFile(hex), contents);
+                    break;
+                case COMMIT:
+                    to.writeRaw(to.commitFile(hex), contents);
+                    to.indexCommit(hex);
+                    break;
+                default:
+                    throw error("Corrupt pack.");
+            }
+        }
+    }
+}
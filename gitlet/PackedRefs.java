@@ -0,0 +1,169 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static gitlet.Utils.*;
+
+/** A sorted table of names and object ids in one file, used for packed
+ *  branches and for tags.
+ *
+ *  The file is memory-mapped and searched by bisection, so looking up a
+ *  name costs a handful of page reads no matter how many names it holds.
+ *  Its layout is
+ *      int MAGIC, int COUNT, int[COUNT] entry offsets,
+ *  followed by COUNT entries, sorted by name, of the form
+ *      short name length, name in UTF-8, 20-byte id.
+ *  The table is replaced as a whole by write(), so readers never see a
+ *  half-written one.
+ *
+ *  @author Gabriel and Umar
+ */
+class PackedRefs {
+
+    /** First int of a packed table ("GPRF"). */
+    private static final int MAGIC = 0x47505246;
+
+    /** Length in bytes of a binary SHA-1. */
+    private static final int ID_BYTES = UID_LENGTH / 2;
+
+    /** The file holding the table. */
+    private final File file;
+
+    /** FILE mapped into memory, or null before the first lookup or if
+     *  there is no such file. */
+    private ByteBuffer table;
+
+    /** Whether TABLE has been loaded. */
+    private boolean loaded;
+
+    /** The table stored in FILE. */
+    PackedRefs(File file) {
+        this.file = file;
+    }
+
+    /** Forgets the mapped table, so the next lookup sees changes made by
+     *  other processes. */
+    void reload() {
+        loaded = false;
+        table = null;
+    }
+
+    /** Maps the table into memory if that has not been done yet. */
+    private ByteBuffer table() {
+        if (!loaded) {
+            loaded = true;
+            if (file.isFile()) {
+                try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                    if (buffer.getInt(0) != MAGIC) {
+                        throw error("Corrupt %s file.", file.getName());
+                    }
+                    table = buffer;
+                } catch (IOException excp) {
+                    throw new IllegalArgumentException(excp);
+                }
+            }
+        }
+        return table;
+    }
+
+    /** Returns the id stored for NAME, or null. */
+    String lookup(String name) {
+        ByteBuffer entries = table();
+        if (entries == null) {
+            return null;
+        }
+        int low = 0;
+        int high = entries.getInt(4) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int offset = entries.getInt(8 + 4 * mid);
+            int cmp = nameAt(entries, offset).compareTo(name);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return idAt(entries, offset);
+            }
+        }
+        return null;
+    }
+
+    /** Returns every name in the table and its id. */
+    TreeMap<String, String> readAll() {
+        TreeMap<String, String> all = new TreeMap<>();
+        ByteBuffer entries = table();
+        if (entries != null) {
+            int count = entries.getInt(4);
+            for (int i = 0; i < count; i += 1) {
+                int offset = entries.getInt(8 + 4 * i);
+                all.put(nameAt(entries, offset), idAt(entries, offset));
+            }
+        }
+        return all;
+    }
+
+    /** Replaces the table with the sorted names and ids in ALL. */
+    void write(TreeMap<String, String> all) {
+        ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        int[] offsets = new int[all.size()];
+        int headerSize = 8 + 4 * all.size();
+        try {
+            DataOutputStream out = new DataOutputStream(entries);
+            int i = 0;
+            for (Map.Entry<String, String> entry : all.entrySet()) {
+                offsets[i] = headerSize + out.size();
+                byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeShort(name.length);
+                out.write(name);
+                out.write(hexToBytes(entry.getValue()));
+                i += 1;
+            }
+
+            ByteArrayOutputStream contents = new ByteArrayOutputStream(headerSize + entries.size());
+            DataOutputStream header = new DataOutputStream(contents);
+            header.writeInt(MAGIC);
+            header.writeInt(all.size());
+            for (int offset : offsets) {
+                header.writeInt(offset);
+            }
+            entries.writeTo(contents);
+
+            // write beside the table and rename, so readers never see a
+            // half-written file
+            File temp = join(file.getParentFile(), file.getName() + ".tmp");
+            writeContents(temp, contents.toByteArray());
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+        reload();
+    }
+
+    private static String nameAt(ByteBuffer entries, int offset) {
+        int length = entries.getShort(offset);
+        byte[] name = new byte[length];
+        entries.get(offset + 2, name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    private static String idAt(ByteBuffer entries, int offset) {
+        byte[] id = new byte[ID_BYTES];
+        entries.get(offset + 2 + entries.getShort(offset), id);
+        return bytesToHex(id);
+    }
+}
@@ -0,0 +1,247 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+
+/** The recent positions of the HEAD and of each branch, so that a bad reset
+ *  or switch can be undone.
+ *
+ *  Each ref has a log file under .gitlet/logs, named HEAD or after the
+ *  branch. A log is a ring buffer of fixed-size records: once it holds
+ *  CAPACITY records the oldest is overwritten, so logs never grow past a
+ *  bound and appending is a single write of one record and one counter.
+ *  Its layout is
+ *      int MAGIC, int CAPACITY, long number of records ever appended,
+ *  followed by CAPACITY slots of the form
+ *      long time in milliseconds, 20-byte old id, 20-byte new id, byte op.
+ *  An old id of all zeros means the ref did not exist before.
+ *
+ *  Appended moves are kept in memory until flush(), which the owning Refs
+ *  calls only once the ref updates themselves have passed their
+ *  compare-and-swap check, so a log never records a move that was not
+ *  made. Reads see the moves not yet written.
+ *
+ *  @author Gabriel and Umar
+ */
+class Reflog {
+
+    /** First int of a log file ("GRLG"). */
+    private static final int MAGIC = 0x47524C47;
+
+    /** Length in bytes of a binary SHA-1. */
+    private static final int ID_BYTES = UID_LENGTH / 2;
+
+    /** Length in bytes of the header. */
+    private static final int HEADER_BYTES = 16;
+
+    /** Length in bytes of one record. */
+    private static final int RECORD_BYTES = 8 + 2 * ID_BYTES + 1;
+
+    /** Records kept per ref unless core.reflogSize says otherwise. */
+    private static final int DEFAULT_CAPACITY = 256;
+
+    /** Setting for the number of records kept per ref. */
+    static final String SIZE = "core.reflogSize";
+
+    /** Name of the log of the HEAD. */
+    static final String HEAD = "HEAD";
+
+    /** Operations that move a ref. */
+    static final byte INIT = 0;
+    static final byte COMMIT = 1;
+    static final byte SWITCH = 2;
+    static final byte RESET = 3;
+    static final byte BRANCH = 4;
+    static final byte MERGE = 5;
+    static final byte PUSH = 6;
+    static final byte FETCH = 7;
+    static final byte CHERRY_PICK = 8;
+    static final byte REBASE = 9;
+
+    /** One move of a ref. */
+    static class Entry {
+        /** When the move happened, in milliseconds. */
+        final long time;
+        /** The previous commit id, or null if the ref was created. */
+        final String oldId;
+        /** The commit id moved to. */
+        final String newId;
+        /** What moved the ref. */
+        final byte op;
+
+        Entry(long time, String oldId, String newId, byte op) {
+            this.time = time;
+            this.oldId = oldId;
+            this.newId = newId;
+            this.op = op;
+        }
+    }
+
+    /** Directory of log files. */
+    private final File logsDir;
+
+    /** The .gitlet directory, for reading the configuration. */
+    private final File gitletDir;
+
+    /** Moves appended since the last flush, oldest first, by ref. */
+    private final Map<String, List<Entry>> pending = new TreeMap<>();
+
+    /** The logs of the repository whose .gitlet directory is GITLETDIR. */
+    Reflog(File gitletDir) {
+        this.gitletDir = gitletDir;
+        this.logsDir = join(gitletDir, "logs");
+    }
+
+    /** Returns the name of operation OP. */
+    static String opName(byte op) {
+        switch (op) {
+            case INIT:
+                return "init";
+            case COMMIT:
+                return "commit";
+            case SWITCH:
+                return "switch";
+            case RESET:
+                return "reset";
+            case BRANCH:
+                return "branch";
+            case MERGE:
+                return "merge";
+            case PUSH:
+                return "push";
+            case FETCH:
+                return "fetch";
+            case CHERRY_PICK:
+                return "cherry-pick";
+            case REBASE:
+                return "rebase";
+            default:
+                return "unknown";
+        }
+    }
+
+    /** Records that OP moved REF from OLDID, or null, to NEWID. The move
+     *  is written by the next flush(). */
+    void append(String ref, String oldId, String newId, byte op) {
+        pending.computeIfAbsent(ref, k -> new ArrayList<>())
+                .add(new Entry(System.currentTimeMillis(), oldId, newId, op));
+    }
+
+    /** Writes every move appended since the last flush. */
+    void flush() {
+        for (Map.Entry<String, List<Entry>> moves : pending.entrySet()) {
+            for (Entry entry : moves.getValue()) {
+                write(moves.getKey(), entry);
+            }
+        }
+        pending.clear();
+    }
+
+    /** Forgets the moves appended since the last flush. */
+    void discard() {
+        pending.clear();
+    }
+
+    /** Adds ENTRY to the log file of REF. */
+    private void write(String ref, Entry entry) {
+        File log = join(logsDir, ref);
+        log.getParentFile().mkdirs();
+        try (FileChannel channel = FileChannel.open(log.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            if (channel.size() < HEADER_BYTES) {
+                int capacity = Math.max(1, new Config(gitletDir).getInt(SIZE, DEFAULT_CAPACITY));
+                header.putInt(MAGIC).putInt(capacity).putLong(0).flip();
+                channel.write(header, 0);
+            } else {
+                channel.read(header, 0);
+                if (header.getInt(0) != MAGIC) {
+                    throw error("Corrupt reflog %s.", ref);
+                }
+            }
+            int capacity = header.getInt(4);
+            long count = header.getLong(8);
+
+            ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+            record.putLong(entry.time);
+            record.put(entry.oldId == null ? new byte[ID_BYTES] : hexToBytes(entry.oldId));
+            record.put(hexToBytes(entry.newId));
+            record.put(entry.op).flip();
+            channel.write(record, HEADER_BYTES + (count % capacity) * RECORD_BYTES);
+
+            // the counter is written last, so a torn record is never counted
+            ByteBuffer counter = ByteBuffer.allocate(8).putLong(0, count + 1);
+            channel.write(counter, 8);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Returns the recorded moves of REF, newest first. */
+    List<Entry> entries(String ref) {
+        File log = join(logsDir, ref);
+        List<Entry> entries = new ArrayList<>(pending.getOrDefault(ref, List.of()));
+        Collections.reverse(entries);
+        if (!log.isFile()) {
+            return entries;
+        }
+        ByteBuffer contents = ByteBuffer.wrap(readContents(log));
+        if (contents.capacity() < HEADER_BYTES || contents.getInt(0) != MAGIC) {
+            throw error("Corrupt reflog %s.", ref);
+        }
+        int capacity = contents.getInt(4);
+        long count = contents.getLong(8);
+        byte[] zero = new byte[ID_BYTES];
+        byte[] oldId = new byte[ID_BYTES];
+        byte[] newId = new byte[ID_BYTES];
+        for (long i = count - 1; i >= Math.max(0, count - capacity); i -= 1) {
+            int offset = (int) (HEADER_BYTES + (i % capacity) * RECORD_BYTES);
+            contents.get(offset + 8, oldId);
+            contents.get(offset + 8 + ID_BYTES, newId);
+            entries.add(new Entry(contents.getLong(offset),
+                    Arrays.equals(oldId, zero) ? null : bytesToHex(oldId),
+                    bytesToHex(newId), contents.get(offset + 8 + 2 * ID_BYTES)));
+        }
+        return entries;
+    }
+
+    /** Returns the names of every ref with a log. */
+    List<String> refs() {
+        Set<String> names = new TreeSet<>(pending.keySet());
+        collectNames(logsDir, "", names);
+        return new ArrayList<>(names);
+    }
+
+    private static void collectNames(File dir, String prefix, Set<String> names) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                collectNames(child, prefix + child.getName() + "/", names);
+            } else {
+                names.add(prefix + child.getName());
+            }
+        }
+    }
+
+    /** Deletes the log of REF. */
+    void delete(String ref) {
+        pending.remove(ref);
+        join(logsDir, ref).delete();
+    }
+}
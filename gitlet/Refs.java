@@ -0,0 +1,357 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import static gitlet.Utils.*;
+
+/** The branches and HEAD of a repository.
+ *
+ *  A branch is either loose, a file NAME.txt in the branches directory
+ *  holding its commit id (in a subdirectory for names such as R/main that
+ *  contain slashes), or packed, an entry in the packed-refs file.
+ *  New and updated branches are always written loose, and a loose branch
+ *  overrides a packed one of the same name. pack() folds every loose
+ *  branch into packed-refs.
+ *
+ *  Updates to branches, the HEAD and the current branch are kept in memory
+ *  and written by flush(), so a batch of commands that moves a branch many
+ *  times writes it once. Reads through this object see pending updates.
+ *  The writes are compare-and-swap: flush() first checks that every ref it
+ *  is about to write still holds the value this object read, and writes
+ *  nothing if another process has moved one. Commands also call
+ *  checkUnchanged() before changing the working directory or the staging
+ *  area, so a conflict is normally caught before anything is lost. Each
+ *  ref file is replaced by renaming a new file over it, so readers never
+ *  see a partial write.
+ *
+ *  Every move of the HEAD or of a branch is also recorded in its reflog.
+ *  The records are written by flush() with the refs, after the check, and
+ *  dropped with the updates when it fails.
+ *
+ *  packed-refs is a PackedRefs table, searched by bisection, so resolving
+ *  a branch costs a handful of page reads no matter how many branches
+ *  exist.
+ *
+ *  @author Gabriel and Umar
+ */
+class Refs {
+
+    /** Suffix of loose branch files. */
+    private static final String SUFFIX = ".txt";
+
+    /** Directory of loose branch files. */
+    private final File branchesDir;
+
+    /** The packed branch table. */
+    private final PackedRefs packed;
+
+    /** Holds the file name of the current branch, e.g. main.txt. */
+    private final File currentBranchFile;
+
+    /** Holds the id of the HEAD commit. */
+    private final File headFile;
+
+    /** The name of the current branch, once read. */
+    private String currentBranch;
+
+    /** Whether CURRENTBRANCH has changed since the last flush. */
+    private boolean currentBranchDirty;
+
+    /** The id of the HEAD commit, once read. */
+    private String head;
+
+    /** Whether HEAD has changed since the last flush. */
+    private boolean headDirty;
+
+    /** Branch updates not yet written, by name. */
+    private final Map<String, String> pending = new TreeMap<>();
+
+    /** The value each branch had on disk when first read, null for a
+     *  branch that did not exist. */
+    private final Map<String, String> expected = new HashMap<>();
+
+    /** The HEAD as first read from disk. */
+    private String expectedHead;
+
+    /** The current branch as first read from disk. */
+    private String expectedCurrentBranch;
+
+    /** The recent positions of every ref. */
+    private final Reflog reflog;
+
+    /** The branches of the repository whose .gitlet directory is
+     *  GITLETDIR. */
+    Refs(File gitletDir) {
+        branchesDir = join(gitletDir, "branches");
+        packed = new PackedRefs(join(gitletDir, "packed-refs"));
+        currentBranchFile = join(gitletDir, "currentBranch.txt");
+        headFile = join(gitletDir, "headcommit.txt");
+        reflog = new Reflog(gitletDir);
+    }
+
+    /** Returns the reflogs of these refs. */
+    Reflog reflog() {
+        return reflog;
+    }
+
+    /**
+     * Returns true if NAME may name a branch, tag or remote. It must be a
+     * single path component, so it stays inside its directory, and must not
+     * look like an option or a revision expression. HEAD is taken: it names
+     * the current commit and its reflog.
+     */
+    static boolean isValidName(String name) {
+        return !name.isEmpty() && !name.startsWith(".") && !name.startsWith("-")
+                && !name.equals(Reflog.HEAD) && !name.contains("..") && !name.contains("@{")
+                && !name.matches(".*[/\\\\~^:\\s].*");
+    }
+
+    /* HEAD */
+
+    /** Returns the id of the HEAD commit. */
+    String head() {
+        if (head == null) {
+            head = readContentsAsString(headFile);
+            expectedHead = head;
+        }
+        return head;
+    }
+
+    /** Points the HEAD at commit ID, recording that OP moved it. */
+    void setHead(String id, byte op) {
+        String oldId = head != null || headFile.isFile() ? head() : null;
+        if (!id.equals(oldId)) {
+            reflog.append(Reflog.HEAD, oldId, id, op);
+        }
+        head = id;
+        headDirty = true;
+    }
+
+    /** Returns the name of the current branch. */
+    String currentBranch() {
+        if (currentBranch == null) {
+            String fileName = readContentsAsString(currentBranchFile);
+            currentBranch = fileName.substring(0, fileName.length() - SUFFIX.length());
+            expectedCurrentBranch = currentBranch;
+        }
+        return currentBranch;
+    }
+
+    /** Makes NAME the current branch. */
+    void setCurrentBranch(String name) {
+        currentBranch = name;
+        currentBranchDirty = true;
+    }
+
+    /** Writes every pending update, and the reflog records of those
+     *  moves, to disk, unless a ref has been moved by another process
+     *  since it was read, in which case nothing is written, the pending
+     *  updates and records are dropped and a GitletException is thrown. */
+    void flush() {
+        String moved = movedRef(pending.keySet(), headDirty, currentBranchDirty);
+        if (moved != null) {
+            pending.clear();
+            headDirty = false;
+            currentBranchDirty = false;
+            reflog.discard();
+            throw error("%s was changed by another process; try again.", moved);
+        }
+
+        for (Map.Entry<String, String> entry : pending.entrySet()) {
+            File loose = looseFile(entry.getKey());
+            loose.getParentFile().mkdirs();
+            replace(loose, entry.getValue());
+            expected.put(entry.getKey(), entry.getValue());
+        }
+        pending.clear();
+        if (headDirty) {
+            replace(headFile, head);
+            expectedHead = head;
+            headDirty = false;
+        }
+        if (currentBranchDirty) {
+            replace(currentBranchFile, currentBranch + SUFFIX);
+            expectedCurrentBranch = currentBranch;
+            currentBranchDirty = false;
+        }
+        reflog.flush();
+    }
+
+    /** Throws a GitletException if a ref this object has read was moved by
+     *  another process since. Commands call this before their first step
+     *  that cannot be undone, such as clearing the staging area, so that a
+     *  conflict is found while nothing has changed yet; flush() checks
+     *  again just before writing. */
+    void checkUnchanged() {
+        String moved = movedRef(expected.keySet(), expectedHead != null, expectedCurrentBranch != null);
+        if (moved != null) {
+            throw error("%s was changed by another process; try again.", moved);
+        }
+    }
+
+    /** Returns the name of one of the branches NAMES, of the HEAD if
+     *  CHECKHEAD or of the current branch if CHECKCURRENTBRANCH that no
+     *  longer has the value it was read with, or null if there is none. */
+    private String movedRef(Collection<String> names, boolean checkHead, boolean checkCurrentBranch) {
+        packed.reload();
+        for (String name : names) {
+            if (expected.containsKey(name) && !Objects.equals(expected.get(name), resolveOnDisk(name))) {
+                return "Branch " + name;
+            }
+        }
+        if (checkHead && expectedHead != null
+                && !(headFile.isFile() && readContentsAsString(headFile).equals(expectedHead))) {
+            return "HEAD";
+        }
+        if (checkCurrentBranch && expectedCurrentBranch != null
+                && !readContentsAsString(currentBranchFile).equals(expectedCurrentBranch + SUFFIX)) {
+            return "The current branch";
+        }
+        return null;
+    }
+
+    /** Replaces the contents of FILE with CONTENTS by writing a new file
+     *  beside it and renaming it over FILE. */
+    private static void replace(File file, String contents) {
+        File temp = new File(file.getPath() + ".lock");
+        writeContents(temp, contents);
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /* BRANCHES */
+
+    /** Returns the commit id of branch NAME, or null if there is no such
+     *  branch. */
+    String resolve(String name) {
+        if (pending.containsKey(name)) {
+            return pending.get(name);
+        }
+        String id = resolveOnDisk(name);
+        if (!expected.containsKey(name)) {
+            expected.put(name, id);
+        }
+        return id;
+    }
+
+    /** Returns the commit id of branch NAME as written on disk, or null. */
+    private String resolveOnDisk(String name) {
+        File loose = looseFile(name);
+        if (loose.isFile()) {
+            return readLoose(loose);
+        }
+        return packed.lookup(name);
+    }
+
+    /** Returns true if branch NAME exists. */
+    boolean exists(String name) {
+        return pending.containsKey(name) || looseFile(name).isFile() || packed.lookup(name) != null;
+    }
+
+    /** Points branch NAME at commit ID, creating it if needed, and records
+     *  that OP moved it. */
+    void update(String name, String id, byte op) {
+        String oldId = resolve(name);
+        if (!id.equals(oldId)) {
+            reflog.append(name, oldId, id, op);
+        }
+        pending.put(name, id);
+    }
+
+    /** Deletes branch NAME. Returns false if it did not exist. */
+    boolean delete(String name) {
+        boolean deleted = pending.remove(name) != null;
+        deleted |= looseFile(name).delete();
+        if (packed.lookup(name) != null) {
+            TreeMap<String, String> all = packed.readAll();
+            all.remove(name);
+            packed.write(all);
+            deleted = true;
+        }
+        reflog.delete(name);
+        expected.put(name, null);
+        return deleted;
+    }
+
+    /** Returns the names of all branches in sorted order. */
+    List<String> names() {
+        TreeMap<String, String> all = packed.readAll();
+        for (String name : looseNames()) {
+            all.put(name, "");
+        }
+        all.putAll(pending);
+        return new ArrayList<>(all.keySet());
+    }
+
+    /** Moves every loose branch into packed-refs and returns the number of
+     *  branches packed. */
+    int pack() {
+        flush();
+        TreeMap<String, String> all = packed.readAll();
+        List<File> looseFiles = new ArrayList<>();
+        for (String name : looseNames()) {
+            File loose = looseFile(name);
+            all.put(name, readLoose(loose));
+            looseFiles.add(loose);
+        }
+        packed.write(all);
+        for (File loose : looseFiles) {
+            loose.delete();
+        }
+        return all.size();
+    }
+
+    /* LOOSE REFS */
+
+    private File looseFile(String name) {
+        return join(branchesDir, name + SUFFIX);
+    }
+
+    /** Returns the names of all loose branches. */
+    private List<String> looseNames() {
+        List<String> names = new ArrayList<>();
+        collectLooseNames(branchesDir, "", names);
+        return names;
+    }
+
+    private static void collectLooseNames(File dir, String prefix, List<String> names) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            String fileName = child.getName();
+            if (child.isDirectory()) {
+                collectLooseNames(child, prefix + fileName + "/", names);
+            } else if (fileName.endsWith(SUFFIX)) {
+                names.add(prefix + fileName.substring(0, fileName.length() - SUFFIX.length()));
+            }
+        }
+    }
+
+    /** Returns the commit id in the loose branch file LOOSE. Older
+     *  repositories wrote the main branch as a serialized String, so that
+     *  format is accepted too. */
+    private static String readLoose(File loose) {
+        byte[] contents = readContents(loose);
+        if (contents.length > 1 && contents[0] == (byte) 0xAC && contents[1] == (byte) 0xED) {
+            return readObject(loose, String.class);
+        }
+        return new String(contents, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,206 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** Pairs files that were deleted or kept with files that were added, when
+ *  the added file has the same or similar contents, to report renames and
+ *  copies.
+ *
+ *  Identical contents are matched through their blob ids. For the rest,
+ *  each file is summarized by a MinHash sketch of the set of its lines:
+ *  HASHES independent hashes, each keeping the smallest value over all
+ *  lines. The fraction of positions where two sketches agree estimates the
+ *  fraction of lines the files share. Rather than comparing every added
+ *  file with every source, sketches are cut into BANDS bands and only files
+ *  that agree on a whole band are compared, which finds similar pairs with
+ *  high probability in time close to linear in the number of files.
+ *
+ *  @author Gabriel and Umar
+ */
+class RenameDetector {
+
+    /** The least similarity, in percent, reported as a rename or copy. */
+    static final int MIN_SCORE = 50;
+
+    /** Number of hashes in a sketch. */
+    private static final int HASHES = 64;
+
+    /** Number of bands a sketch is cut into for finding candidates. */
+    private static final int BANDS = 16;
+
+    /** Hashes per band. */
+    private static final int ROWS = HASHES / BANDS;
+
+    /** A file SOURCE whose contents reappear, SCORE percent similar, as
+     *  TARGET. */
+    static class Match {
+        final String source;
+        final String target;
+        final int score;
+
+        Match(String source, String target, int score) {
+            this.source = source;
+            this.target = target;
+            this.score = score;
+        }
+    }
+
+    /** Where file contents are read from. */
+    private final ObjectStore objects;
+
+    /** Sketches already computed, by blob id. */
+    private final Map<String, long[]> sketches = new HashMap<>();
+
+    /** Compares blobs read from OBJECTS. */
+    RenameDetector(ObjectStore objects) {
+        this.objects = objects;
+    }
+
+    /** Returns the files of ADDED that are renames of files in REMOVED,
+     *  both mapping paths to blob ids. Each file is used at most once. */
+    List<Match> renames(Map<String, String> removed, Map<String, String> added) {
+        return pair(removed, added, true);
+    }
+
+    /** Returns the files of ADDED that are copies of files in SOURCES, both
+     *  mapping paths to blob ids. A source may be copied many times. */
+    List<Match> copies(Map<String, String> sources, Map<String, String> added) {
+        return pair(sources, added, false);
+    }
+
+    /** Matches each target in TARGETS with its most similar file in
+     *  SOURCES, using each source only once if EXCLUSIVE. */
+    private List<Match> pair(Map<String, String> sources, Map<String, String> targets, boolean exclusive) {
+        List<Match> matches = new ArrayList<>();
+        Set<String> usedSources = new HashSet<>();
+        Set<String> usedTargets = new HashSet<>();
+
+        // identical contents first, since they need no reading
+        Map<String, List<String>> sourcesByBlob = new HashMap<>();
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            sourcesByBlob.computeIfAbsent(source.getValue(), k -> new ArrayList<>()).add(source.getKey());
+        }
+        for (Map.Entry<String, String> target : targets.entrySet()) {
+            for (String source : sourcesByBlob.getOrDefault(target.getValue(), List.of())) {
+                if (!exclusive || usedSources.add(source)) {
+                    matches.add(new Match(source, target.getKey(), 100));
+                    usedTargets.add(target.getKey());
+                    break;
+                }
+            }
+        }
+
+        // then similar contents, among files that share a band
+        List<String> sourcePaths = new ArrayList<>();
+        Map<Long, List<Integer>> buckets = new HashMap<>();
+        for (String source : sources.keySet()) {
+            long[] sketch = exclusive && usedSources.contains(source) ? null : sketch(sources.get(source));
+            if (sketch != null) {
+                for (int band = 0; band < BANDS; band += 1) {
+                    buckets.computeIfAbsent(bandKey(sketch, band), k -> new ArrayList<>()).add(sourcePaths.size());
+                }
+                sourcePaths.add(source);
+            }
+        }
+        List<Match> candidates = new ArrayList<>();
+        for (String target : targets.keySet()) {
+            long[] sketch = usedTargets.contains(target) ? null : sketch(targets.get(target));
+            if (sketch == null) {
+                continue;
+            }
+            Set<Integer> compared = new HashSet<>();
+            for (int band = 0; band < BANDS; band += 1) {
+                for (int i : buckets.getOrDefault(bandKey(sketch, band), List.of())) {
+                    if (compared.add(i)) {
+                        String source = sourcePaths.get(i);
+                        int score = similarity(sketch, sketch(sources.get(source)));
+                        if (score >= MIN_SCORE) {
+                            candidates.add(new Match(source, target, score));
+                        }
+                    }
+                }
+            }
+        }
+
+        // best pairs first, each file taking part once
+        candidates.sort(Comparator.comparingInt((Match m) -> -m.score)
+                .thenComparing(m -> m.target).thenComparing(m -> m.source));
+        for (Match candidate : candidates) {
+            if (usedTargets.contains(candidate.target)
+                    || (exclusive && usedSources.contains(candidate.source))) {
+                continue;
+            }
+            usedTargets.add(candidate.target);
+            usedSources.add(candidate.source);
+            matches.add(candidate);
+        }
+        return matches;
+    }
+
+    /** Returns the MinHash sketch of the lines of blob ID, or null if it
+     *  has no lines. */
+    private long[] sketch(String id) {
+        if (sketches.containsKey(id)) {
+            return sketches.get(id);
+        }
+        byte[] contents = objects.readBlob(id);
+        long[] sketch = null;
+        int start = 0;
+        while (start < contents.length) {
+            int end = start;
+            while (end < contents.length && contents[end] != '\n') {
+                end += 1;
+            }
+            // FNV-1a over the line
+            long line = 0xcbf29ce484222325L;
+            for (int i = start; i < end; i += 1) {
+                line = (line ^ (contents[i] & 0xff)) * 0x100000001b3L;
+            }
+            if (sketch == null) {
+                sketch = new long[HASHES];
+                Arrays.fill(sketch, Long.MAX_VALUE);
+            }
+            for (int i = 0; i < HASHES; i += 1) {
+                sketch[i] = Math.min(sketch[i], mix(line + (i + 1) * 0x9E3779B97F4A7C15L));
+            }
+            start = end + 1;
+        }
+        sketches.put(id, sketch);
+        return sketch;
+    }
+
+    /** Returns the percentage of positions where sketches A and B agree. */
+    private static int similarity(long[] a, long[] b) {
+        int same = 0;
+        for (int i = 0; i < HASHES; i += 1) {
+            if (a[i] == b[i]) {
+                same += 1;
+            }
+        }
+        return same * 100 / HASHES;
+    }
+
+    /** Returns a key for band BAND of SKETCH, equal for sketches that agree
+     *  on the whole band. */
+    private static long bandKey(long[] sketch, int band) {
+        long key = band;
+        for (int i = band * ROWS; i < (band + 1) * ROWS; i += 1) {
+            key = mix(key * 31 + sketch[i]);
+        }
+        return key;
+    }
+
+    /** Scrambles the bits of X (the SplitMix64 finalizer). */
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+}
@@ -1,8 +1,16 @@
 package gitlet;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
 
 import static gitlet.Utils.*;
 
@@ -25,6 +33,28 @@ public class Repository implements Serializable {
         File repoFile = new File(GITLET_DIR, "repo.ser");
         Utils.writeObject(repoFile, this);
     }
+
+    /**
+     * Writes out the branch and HEAD updates made so far. Main calls this
+     * once after each command, or once per checkpoint in batch mode. If
+     * another process moved one of the refs in the meantime, nothing is
+     * written and the error is printed.
+     */
+    public void flush() {
+        if (objectStore != null) {
+            objectStore.flush();
+        }
+        if (tags != null) {
+            tags.flush();
+        }
+        if (refs != null) {
+            try {
+                refs.flush();
+            } catch (GitletException excp) {
+                System.out.println(excp.getMessage());
+            }
+        }
+    }
     /**
      * The current working directory.
      * This variable represents the current working directory where the Gitlet repository is located.
@@ -64,6 +94,19 @@ public class Repository implements Serializable {
      */
     public static final File BLOBS_DIR = join(GITLET_DIR, "blobs");
 
+    /**
+     * This directory stores trees: the maps from file paths to blob ids of
+     * commits, kept apart from the commits themselves so that reading a
+     * commit's message and parents does not load its file list.
+     */
+    public static final File TREES_DIR = join(GITLET_DIR, "trees");
+
+    /**
+     * This directory stores annotated tags, each named after the sha1 of its
+     * contents. The tag names themselves are kept in the packed-tags table.
+     */
+    public static final File TAGS_DIR = join(GITLET_DIR, "tags");
+
     /**
      * The current commit pointed to by the HEAD.
      * This variable represents the current commit that the HEAD points to.
@@ -80,6 +123,91 @@ public class Repository implements Serializable {
 
     public static final File main = join(BRANCHES_DIR, "main.txt");
 
+    /**
+     * How long an unreachable object is kept before gc may delete it.
+     * This protects objects that were just written by a command that has
+     * not updated its branch yet, and gives users a window to recover
+     * commits lost through reset or rm-branch.
+     */
+    public static final long GC_GRACE_PERIOD_MS = 14L * 24 * 60 * 60 * 1000;
+
+    /** Reads and writes this repository's commits and blobs. Created on
+     *  first use, after init has made the directories it needs. */
+    private transient ObjectStore objectStore;
+
+    /** Whether this process holds the repository lock. */
+    private transient boolean lockHeld;
+
+    private ObjectStore objectStore() {
+        if (objectStore == null) {
+            objectStore = new ObjectStore(GITLET_DIR);
+            objectStore.setLockHeld(lockHeld);
+        }
+        return objectStore;
+    }
+
+    /**
+     * Records whether this process holds the repository lock. Main calls
+     * this before running a command; without the lock, indexes such as the
+     * object filter are used in memory but never written back.
+     */
+    public void setLockHeld(boolean held) {
+        lockHeld = held;
+        if (objectStore != null) {
+            objectStore.setLockHeld(held);
+        }
+    }
+
+    /** This repository's branches and HEAD, created on first use. */
+    private transient Refs refs;
+
+    private Refs refs() {
+        if (refs == null) {
+            refs = new Refs(GITLET_DIR);
+        }
+        return refs;
+    }
+
+    /** This repository's tags, created on first use. */
+    private transient Tags tags;
+
+    private Tags tags() {
+        if (tags == null) {
+            tags = new Tags(GITLET_DIR);
+        }
+        return tags;
+    }
+
+    /** This repository's stashed changes, created on first use. */
+    private transient Stash stash;
+
+    private Stash stash() {
+        if (stash == null) {
+            stash = new Stash(GITLET_DIR);
+        }
+        return stash;
+    }
+
+    /** Resolves revision expressions, created on first use. */
+    private transient Revisions revisions;
+
+    private Revisions revisions() {
+        if (revisions == null) {
+            revisions = new Revisions(refs(), tags(), objectStore());
+        }
+        return revisions;
+    }
+
+    /** Which tracked files are materialized, created on first use. */
+    private transient SparseCheckout sparse;
+
+    private SparseCheckout sparse() {
+        if (sparse == null) {
+            sparse = new SparseCheckout(GITLET_DIR);
+        }
+        return sparse;
+    }
+
 
     /**
      * Initializes a new Gitlet repository.
@@ -97,56 +225,82 @@ public class Repository implements Serializable {
             ADDING_AREA.mkdirs();
             REMOVING_AREA.mkdirs();
             BLOBS_DIR.mkdirs();
+            TREES_DIR.mkdirs();
             BRANCHES_DIR.mkdirs();
 
             // Create the initial commit
             Commit initialCommit = new Commit("initial commit", null);
-            writeObject(join(COMMITS_DIR, initialCommit.getId()), initialCommit);
+            objectStore().writeCommit(initialCommit);
 
-            writeContents(headCommit, initialCommit.getId());
-            writeContents(currentBranch, "main.txt");
-            writeObject(main, initialCommit.getId());
+            refs().setHead(initialCommit.getId(), Reflog.INIT);
+            refs().setCurrentBranch("main");
+            refs().update("main", initialCommit.getId(), Reflog.INIT);
         }
     }
 
     /**
-     * Adds a file to the staging area.
+     * Adds a file to the staging area. If FILENAME is a directory, every
+     * file under it is added except those excluded by .gitletignore files.
+     * A file named explicitly is added even if it is ignored.
      *
-     * @param fileName the name of the file to add
+     * @param fileName the path of the file or directory to add
      */
     public void add(String fileName) {
         if (!gitletExists()) {
             return;
         }
 
-        if (!join(Repository.CWD, fileName).exists()) {
+        String path = WorkingTree.normalize(fileName);
+        if (path == null || !join(Repository.CWD, path).exists()) {
             System.out.println("File does not exist.");
             return;
         }
-        String contents1 = fileName + readContentsAsString(join(Repository.CWD, fileName));
-        String fileSHA1 = sha1(contents1);
 
-        TreeMap currTreeMap = getHeadCommit().getBlobs();
+        TreeMap<String, String> currTreeMap = getHeadCommit().getBlobs();
+        if (join(Repository.CWD, path).isDirectory()) {
+            for (String file : new WorkingTree(CWD, true).files(path)) {
+                if (sparse().includes(file)) {
+                    stageFile(file, currTreeMap);
+                }
+            }
+        } else if (!sparse().includes(path)) {
+            System.out.println("The path is outside the sparse-checkout definition.");
+        } else {
+            stageFile(path, currTreeMap);
+        }
+    }
+
+    /**
+     * Stages the working copy of FILENAME for addition, unless it matches
+     * the version in CURRTREEMAP, the blobs of the head commit.
+     */
+    private void stageFile(String fileName, TreeMap<String, String> currTreeMap) {
+        byte[] contents = readContents(join(Repository.CWD, fileName));
+        String fileSHA1 = sha1(contents);
 
         // If the file was in the staged for removal area, remove it from there
-        File removedFile = join(REMOVING_AREA, fileName);
-        if (removedFile.exists()) {
-            removedFile.delete();
-        }
+        WorkingTree.delete(REMOVING_AREA, fileName);
+        WorkingTree.delete(ADDING_AREA, fileName);
 
-        // checks if our file is in the current commit by checking the current commit's treeMap
-        if (currTreeMap.containsValue(fileSHA1)) {
-            if (join(Repository.ADDING_AREA, fileName).exists()) {
-                join(Repository.ADDING_AREA, fileName).delete();
-            }
+        // only stage the file if it differs from the version in the current commit
+        if (!isSameBlob(currTreeMap.get(fileName), fileName, contents, fileSHA1)) {
+            File file1 = WorkingTree.prepare(Repository.ADDING_AREA, fileName);
+            writeContents(file1, contents);
+        }
+    }
 
-        } else {
-            if (join(Repository.ADDING_AREA, fileName).exists()) {
-                join(Repository.ADDING_AREA, fileName).delete();
-            }
-            File file1 = join(Repository.ADDING_AREA, fileName);
-            writeContents(file1, readContents(join(Repository.CWD, fileName)));
+    /**
+     * Returns true if TRACKEDID, the blob id a commit records for FILENAME,
+     * names the same contents as CONTENTS whose SHA-1 is CONTENTSHA1. Blobs
+     * written before content-only addressing were named by the hash of the
+     * file name followed by the contents, so that form is accepted too.
+     */
+    private static boolean isSameBlob(String trackedId, String fileName, byte[] contents, String contentSHA1) {
+        if (trackedId == null) {
+            return false;
         }
+        return trackedId.equals(contentSHA1)
+                || trackedId.equals(sha1(fileName + new String(contents, StandardCharsets.UTF_8)));
     }
 
     /**
@@ -159,8 +313,8 @@ public class Repository implements Serializable {
             return;
         }
 
-        List<String> filesToAdd = plainFilenamesIn(ADDING_AREA);
-        List<String> filesToRemove = plainFilenamesIn(REMOVING_AREA);
+        List<String> filesToAdd = new WorkingTree(ADDING_AREA).files();
+        List<String> filesToRemove = new WorkingTree(REMOVING_AREA).files();
         if (filesToAdd.isEmpty() && filesToRemove.isEmpty()) {
             System.out.println("No changes added to the commit.");
             return;
@@ -171,44 +325,43 @@ public class Repository implements Serializable {
             return;
         }
 
+        if (!refsUnchanged()) {
+            return;
+        }
         Commit newCommit = new Commit(message, getHeadCommit().getId());
         newCommit.copyThisBlobs(getHeadCommit().getBlobs());
 
-        // loop through the staging area, updating the blobs directory
-        for (String fileName : filesToAdd) {
-            String fileContent = readContentsAsString(join(ADDING_AREA, fileName));
-            String fileHash = sha1(fileName + fileContent);
-
-            // add file to the Blobs Directory
-            File blob1 = join(BLOBS_DIR, fileHash);
-            writeContents(blob1, fileContent);
+        // add the staged files to the Blobs Directory, hashing, compressing
+        // and writing them in parallel; blobs are named by their contents
+        // alone, so identical files share a single blob
+        ObjectStore store = objectStore();
+        Map<String, String> fileHashes = filesToAdd.parallelStream().collect(Collectors.toMap(
+                fileName -> fileName, fileName -> store.writeBlob(readContents(join(ADDING_AREA, fileName)))));
 
+        // loop through the staging area, updating the new commit's blobs
+        for (String fileName : filesToAdd) {
             // add the blob to the newCommit's TreeMap
-            newCommit.blobs.put(fileName, fileHash);
+            newCommit.getBlobs().put(fileName, fileHashes.get(fileName));
 
             // delete this file from the staging area
-            File staged_file = join(Repository.ADDING_AREA, fileName);
-            staged_file.delete();
+            WorkingTree.delete(Repository.ADDING_AREA, fileName);
         }
 
         // loop through the removal area, updating the new commit's blobs
         for (String fileName : filesToRemove) {
             // remove the blob from the newCommit's TreeMap
-            newCommit.blobs.remove(fileName);
+            newCommit.getBlobs().remove(fileName);
 
             // delete this file from the removal area
-            File removed_file = join(Repository.REMOVING_AREA, fileName);
-            removed_file.delete();
+            WorkingTree.delete(Repository.REMOVING_AREA, fileName);
         }
 
         // save the new commit to the commits directory
-        File commitFile = join(Repository.COMMITS_DIR, newCommit.getId());
-        writeObject(commitFile, newCommit);
+        objectStore().writeCommit(newCommit);
 
         // set the headCommit and currBranch
-        writeContents(headCommit, newCommit.getId());
-        File branchFile = join(BRANCHES_DIR, readContentsAsString(currentBranch));
-        writeContents(branchFile, newCommit.getId());
+        refs().setHead(newCommit.getId(), Reflog.COMMIT);
+        refs().update(refs().currentBranch(), newCommit.getId(), Reflog.COMMIT);
     }
 
     /**
@@ -220,6 +373,11 @@ public class Repository implements Serializable {
         if (!gitletExists()) {
             return;
         }
+        fileName = WorkingTree.normalize(fileName);
+        if (fileName == null) {
+            Utils.message("No reason to remove the file.");
+            return;
+        }
 
         File stagedFile = join(ADDING_AREA, fileName);
         TreeMap<String, String> trackedFiles = getHeadCommit().getBlobs();
@@ -235,20 +393,15 @@ public class Repository implements Serializable {
         if (isTracked) {
             // Stage for removal and remove the file from the working directory.
             String blobId = trackedFiles.get(fileName);
-            File blob = join(BLOBS_DIR, blobId);
-            String contents = readContentsAsString(blob);
-            File stagedForRemoval = join(REMOVING_AREA, fileName);
-            writeContents(stagedForRemoval, contents);
+            File stagedForRemoval = WorkingTree.prepare(REMOVING_AREA, fileName);
+            objectStore().copyBlobTo(blobId, stagedForRemoval);
 
-            File workingDirFile = join(CWD, fileName);
-            if (workingDirFile.exists()) {
-                workingDirFile.delete();
-            }
+            WorkingTree.delete(CWD, fileName);
         }
 
         if (isStaged) {
             // Unstage the file if it is currently staged.
-            stagedFile.delete();
+            WorkingTree.delete(ADDING_AREA, fileName);
         }
     }
 
@@ -257,90 +410,310 @@ public class Repository implements Serializable {
      * Prints the commit history.
      */
     public void log() {
-        if (!gitletExists()) {
-            return;
-        }
-
-        // Load the head commit
-        Commit headCommit = getHeadCommit();
-
-        // Print commit history
-        printLog(headCommit);
+        log(-1, null, null, false, null, null);
     }
 
-    private void printLog(Commit commit) {
-        if (commit == null) {
+    /**
+     * Prints the first-parent history of REVISION, newest first.
+     * Commits are read one at a time as they are printed, and the walk stops
+     * as soon as LIMIT commits have been printed or a commit older than
+     * SINCE is reached, so the cost is proportional to the output.
+     *
+     * @param limit    the most commits to print, or -1 for no limit
+     * @param since    skip commits older than this, or null
+     * @param until    skip commits newer than this, or null
+     * @param oneline  print each commit as its abbreviated id and message
+     * @param revision where to start, or null for the head commit. A range
+     *                 A..B starts at B and stops at the first ancestor of A;
+     *                 either end defaults to HEAD
+     * @param path     print only commits that changed this file or
+     *                 directory, or null. Each commit's changed-path filter
+     *                 is checked first, so most commits are never read
+     */
+    public void log(int limit, Date since, Date until, boolean oneline, String revision, String path) {
+        if (!gitletExists()) {
             return;
         }
-
-        // Print commit info
-        System.out.println("===");
-        System.out.println("commit " + commit.getId());
-
-        // If this commit is a merge commit, print the parent ids
-        if (commit.getParentIds().size() > 1) {
-            System.out.println("Merge: " + commit.getParentIds().get(0).substring(0, 7) + " "
-                    + commit.getParentIds().get(1).substring(0, 7));
+        if (path != null) {
+            path = WorkingTree.normalize(path);
+            if (path == null) {
+                System.out.println("The path is outside the working directory.");
+                return;
+            }
         }
 
-        System.out.println("Date: " + commit.getFormattedTimestamp());
-        System.out.println(commit.getMessage());
-        System.out.println();
-
-        // Recursively print the first parent commit
-        if (!commit.getParentIds().isEmpty()) {
-            if (commit.getParentIds().get(0) == null) {
+        String startId = refs().head();
+        Set<String> excluded = Collections.emptySet();
+        if (revision != null) {
+            int range = revision.indexOf(Revisions.RANGE);
+            String from = range < 0 ? null : revision.substring(0, range);
+            String to = range < 0 ? revision : revision.substring(range + Revisions.RANGE.length());
+            startId = revisions().resolve(to.isEmpty() ? Revisions.HEAD : to);
+            String fromId = from == null ? null : revisions().resolve(from.isEmpty() ? Revisions.HEAD : from);
+            if (startId == null || (from != null && fromId == null)) {
+                System.out.println("No commit with that id exists.");
                 return;
             }
-            Commit parentCommit = loadCommitFromId(commit.getParentIds().get(0));
-            printLog(parentCommit);
+            if (fromId != null) {
+                excluded = objectStore().graph().ancestors(fromId);
+            }
+        }
+
+        PrintWriter out = bufferedStdout();
+        int printed = 0;
+        String limitPath = path;
+        Iterator<Commit> history = path == null || path.isEmpty()
+                ? new CommitIterator(objectStore(), startId)
+                : new CommitIterator(objectStore(), startId, id -> objectStore().changedPaths().changed(id, limitPath));
+        while (history.hasNext() && printed != limit) {
+            Commit commit = history.next();
+            if (excluded.contains(commit.getId())) {
+                // everything further back is an ancestor of the excluded end too
+                break;
+            }
+            if (since != null && commit.getTimestamp().before(since)) {
+                // history is in reverse chronological order along first parents
+                break;
+            }
+            if (until != null && commit.getTimestamp().after(until)) {
+                continue;
+            }
+            if (oneline) {
+                out.println(commit.getId().substring(0, 7) + " " + commit.getMessage());
+            } else {
+                printCommitInfo(commit, out);
+            }
+            printed += 1;
         }
+        out.flush();
     }
 
+    /**
+     * Returns a writer that buffers output to System.out. It must be flushed,
+     * not closed, when the command is done.
+     */
+    private static PrintWriter bufferedStdout() {
+        return new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+    }
 
-    public Commit loadCommitFromId(String commitId) {
-        int len = commitId.length();
-        for (String commit: plainFilenamesIn(COMMITS_DIR)) {
-            if (commit.substring(0, len).equals(commitId)) {
-                return readObject(join(COMMITS_DIR, commit), Commit.class);
+    /**
+     * Parses a date given on the command line, either as yyyy-MM-dd or as
+     * yyyy-MM-dd HH:mm:ss, in the local time zone.
+     *
+     * @return the date, or null if TEXT is not in either format
+     */
+    public static Date parseDate(String text) {
+        String[] patterns = {"yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd"};
+        for (String pattern : patterns) {
+            SimpleDateFormat format = new SimpleDateFormat(pattern);
+            format.setLenient(false);
+            ParsePosition position = new ParsePosition(0);
+            Date date = format.parse(text, position);
+            if (date != null && position.getIndex() == text.length()) {
+                return date;
             }
         }
-        System.out.println("No commit with that id exists.");
         return null;
     }
 
+    /**
+     * Returns the commit named by COMMITID, which may be any revision
+     * expression (see Revisions), or prints an error and returns null.
+     */
+    public Commit loadCommitFromId(String commitId) {
+        String id = revisions().resolve(commitId);
+        if (id == null) {
+            System.out.println("No commit with that id exists.");
+            return null;
+        }
+        return objectStore().readCommit(id);
+    }
+
+    /**
+     * Prints the moves of REF, a branch name or HEAD, newest first, in the
+     * form "ID REF@{N}: OPERATION: MESSAGE".
+     *
+     * @param ref the ref whose log to print
+     */
+    public void reflog(String ref) {
+        if (!gitletExists()) {
+            return;
+        }
+        if (!ref.equals(Reflog.HEAD) && !refs().exists(ref)) {
+            System.out.println("A branch with that name does not exist.");
+            return;
+        }
+
+        PrintWriter out = bufferedStdout();
+        List<Reflog.Entry> entries = refs().reflog().entries(ref);
+        for (int i = 0; i < entries.size(); i += 1) {
+            Reflog.Entry entry = entries.get(i);
+            String message = objectStore().hasCommit(entry.newId)
+                    ? objectStore().readCommit(entry.newId).getMessage() : "(pruned)";
+            out.println(entry.newId.substring(0, 7) + " " + ref + "@{" + i + "}: "
+                    + Reflog.opName(entry.op) + ": " + message);
+        }
+        out.flush();
+    }
+
     /**
      * Prints the global commit history.
      */
     public void globalLog() {
+        globalLog(null, null);
+    }
+
+    /**
+     * Prints every commit ever made, newest first, or only those made
+     * between SINCE and UNTIL. The commit journal is kept in time order, so
+     * the range is found by bisection and only commits inside it are read.
+     *
+     * @param since skip commits older than this, or null
+     * @param until skip commits newer than this, or null
+     */
+    public void globalLog(Date since, Date until) {
         if (!gitletExists()) {
             return;
         }
 
-        for (String commitId : plainFilenamesIn(COMMITS_DIR)) {
-            Commit commit = loadCommitFromId(commitId);
-
-            // If the commit is null (which should not happen), skip it
-            if (commit == null) {
+        PrintWriter out = bufferedStdout();
+        List<String> commitIds = objectStore().journal().between(since, until);
+        for (int i = commitIds.size() - 1; i >= 0; i -= 1) {
+            String commitId = commitIds.get(i);
+            // commits removed by gc may still be in the journal
+            if (!objectStore().hasCommit(commitId)) {
                 continue;
             }
-            printCommitInfo(commit);
+            Commit commit = objectStore().readCommit(commitId);
+            // journal keys can run ahead of commit times if the clock moved back
+            if ((since == null || !commit.getTimestamp().before(since))
+                    && (until == null || !commit.getTimestamp().after(until))) {
+                printCommitInfo(commit, out);
+            }
         }
+        out.flush();
     }
 
-    private void printCommitInfo(Commit commit) {
-        System.out.println("===");
-        System.out.println("commit " + commit.getId());
+    private void printCommitInfo(Commit commit, PrintWriter out) {
+        out.println("===");
+        out.println("commit " + commit.getId());
 
         // If this commit is a merge commit, print the parent ids
         if (commit.getParentIds().size() > 1) {
-            System.out.println("Merge: " + commit.getParentIds().get(0).substring(0, 7) + " "
+            out.println("Merge: " + commit.getParentIds().get(0).substring(0, 7) + " "
                     + commit.getParentIds().get(1).substring(0, 7));
         }
 
-        System.out.println("Date: " + commit.getFormattedTimestamp());
-        System.out.println(commit.getMessage());
-        System.out.println();
+        out.println("Date: " + commit.getFormattedTimestamp());
+        out.println(commit.getMessage());
+        out.println();
+    }
+
+    /**
+     * Prints the files that differ between two commits, sorted by path, as
+     * "A PATH" for files only in NEWREVISION, "D PATH" for files only in
+     * OLDREVISION and "M PATH" for files whose contents changed. A deleted
+     * file that reappears under a new path is printed as "RSCORE OLD NEW",
+     * and a new file similar to one that is still there as "CSCORE OLD NEW",
+     * where SCORE is the percentage of lines they share.
+     *
+     * @param oldRevision the commit to compare from
+     * @param newRevision the commit to compare to
+     */
+    public void diff(String oldRevision, String newRevision) {
+        if (!gitletExists()) {
+            return;
+        }
+        Commit oldCommit = loadCommitFromId(oldRevision);
+        if (oldCommit == null) {
+            return;
+        }
+        Commit newCommit = loadCommitFromId(newRevision);
+        if (newCommit == null) {
+            return;
+        }
+
+        TreeMap<String, String> oldFiles = oldCommit.getBlobs();
+        TreeMap<String, String> newFiles = newCommit.getBlobs();
+        Map<String, String> added = new TreeMap<>();
+        Map<String, String> removed = new TreeMap<>();
+        TreeMap<String, String> changes = new TreeMap<>();
+        for (Map.Entry<String, String> entry : newFiles.entrySet()) {
+            String oldId = oldFiles.get(entry.getKey());
+            if (oldId == null) {
+                added.put(entry.getKey(), entry.getValue());
+            } else if (!oldId.equals(entry.getValue())) {
+                changes.put(entry.getKey(), "M " + entry.getKey());
+            }
+        }
+        for (Map.Entry<String, String> entry : oldFiles.entrySet()) {
+            if (!newFiles.containsKey(entry.getKey())) {
+                removed.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        RenameDetector detector = new RenameDetector(objectStore());
+        for (RenameDetector.Match match : detector.renames(removed, added)) {
+            removed.remove(match.source);
+            added.remove(match.target);
+            changes.put(match.target, String.format("R%03d %s %s", match.score, match.source, match.target));
+        }
+        for (RenameDetector.Match match : detector.copies(oldFiles, added)) {
+            added.remove(match.target);
+            changes.put(match.target, String.format("C%03d %s %s", match.score, match.source, match.target));
+        }
+        for (String path : added.keySet()) {
+            changes.put(path, "A " + path);
+        }
+        for (String path : removed.keySet()) {
+            changes.put(path, "D " + path);
+        }
+
+        PrintWriter out = bufferedStdout();
+        for (String change : changes.values()) {
+            out.println(change);
+        }
+        out.flush();
+    }
+
+    /**
+     * Prints each line of a file as of a commit, prefixed with the short id
+     * and date of the commit that last changed it.
+     *
+     * @param revision the commit to start from
+     * @param file     the file to blame
+     */
+    public void blame(String revision, String file) {
+        if (!gitletExists()) {
+            return;
+        }
+        String path = WorkingTree.normalize(file);
+        if (path == null) {
+            System.out.println("The path is outside the working directory.");
+            return;
+        }
+        Commit commit = loadCommitFromId(revision);
+        if (commit == null) {
+            return;
+        }
+        String blobId = commit.getBlobs().get(path);
+        if (blobId == null) {
+            System.out.println("File does not exist in that commit.");
+            return;
+        }
+
+        Blame blame = new Blame(objectStore());
+        String[] owners = blame.attribute(commit.getId(), path);
+        List<String> lines = blame.lines(blobId);
+        Map<String, String> labels = new HashMap<>();
+        SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        PrintWriter out = bufferedStdout();
+        for (int i = 0; i < lines.size(); i += 1) {
+            String label = labels.computeIfAbsent(owners[i], id ->
+                id.substring(0, 7) + " (" + formatter.format(objectStore().readCommit(id).getTimestamp()));
+            out.println(label + " " + (i + 1) + ") " + lines.get(i));
+        }
+        out.flush();
     }
 
     /**
@@ -357,8 +730,7 @@ public class Repository implements Serializable {
 
         // Iterate through each commit file
         for (String commitId : plainFilenamesIn(COMMITS_DIR)) {
-            File commitFile = join(COMMITS_DIR, commitId);
-            Commit commit = readObject(commitFile, Commit.class);
+            Commit commit = objectStore().readCommit(commitId);
 
             // Check if the commit's message matches the input message
             if (commit.getMessage().equals(message)) {
@@ -383,14 +755,12 @@ public class Repository implements Serializable {
 
         if (BRANCHES_DIR.exists()) {
             System.out.println("=== Branches ===");
-            for (String branchName : plainFilenamesIn(BRANCHES_DIR)) {
-
-                int length = readContentsAsString(currentBranch).length();
-                int bNameLength = branchName.length();
-                if (branchName.substring(0, bNameLength - 4).equals(readContentsAsString(currentBranch).substring(0, length - 4))) {
+            String current = refs().currentBranch();
+            for (String branchName : refs().names()) {
+                if (branchName.equals(current)) {
                     System.out.print("*");
                 }
-                System.out.println(branchName.substring(0, bNameLength - 4));
+                System.out.println(branchName);
             }
         } else {
             System.out.println("Not in an initialized Gitlet directory.");
@@ -400,9 +770,7 @@ public class Repository implements Serializable {
 
         // Staged files for addition
         System.out.println("=== Staged Files ===");
-        File addingDir = ADDING_AREA;
-        List<String> stagedFiles = plainFilenamesIn(addingDir);
-        Collections.sort(stagedFiles);
+        List<String> stagedFiles = new WorkingTree(ADDING_AREA).files();
         for (String fileName : stagedFiles) {
             System.out.println(fileName);
         }
@@ -410,9 +778,7 @@ public class Repository implements Serializable {
 
         // Staged files for removal
         System.out.println("=== Removed Files ===");
-        File removingDir = REMOVING_AREA;
-        List<String> removedFiles = plainFilenamesIn(removingDir);
-        Collections.sort(removedFiles);
+        List<String> removedFiles = new WorkingTree(REMOVING_AREA).files();
         for (String fileName : removedFiles) {
             System.out.println(fileName);
         }
@@ -443,18 +809,17 @@ public class Repository implements Serializable {
             }
         }
 
-        if (!usingCommit.getBlobs().containsKey(fileName)) {
+        fileName = WorkingTree.normalize(fileName);
+        if (fileName == null || !usingCommit.getBlobs().containsKey(fileName)) {
             System.out.println("File does not exist in that commit.");
             return;
         }
-
-        // checking if there's such a file in CWD. If yes, delete it and do the job. If not, just do the job
-        if (join(Repository.CWD, fileName).exists()) {
-            join(Repository.CWD, fileName).delete();
+        if (!sparse().includes(fileName)) {
+            System.out.println("The path is outside the sparse-checkout definition.");
+            return;
         }
-        String contents = readContentsAsString(join(BLOBS_DIR, usingCommit.getBlobs().get(fileName)));
-        File restoredFile = join(Repository.CWD, fileName);
-        writeContents(restoredFile, contents);
+
+        checkoutFile(fileName, usingCommit.getBlobs().get(fileName));
     }
 
 
@@ -467,16 +832,80 @@ public class Repository implements Serializable {
         if (!gitletExists()) {
             return;
         }
-        String txtName = branchName + ".txt";
-
-        // check if branchName already exists in BRANCHES_DIR
-        if (join(BRANCHES_DIR, txtName).exists()) {
+        if (!Refs.isValidName(branchName)) {
+            System.out.println("Invalid branch name.");
+            return;
+        }
+        // check if branchName already exists
+        if (refs().exists(branchName)) {
             System.out.println("A branch with that name already exists.");
             return;
         }
-        // otherwise, create a new file in BRANCHES_DIR and write contents
-        File newBranchFile = join(BRANCHES_DIR, txtName);
-        writeContents(newBranchFile, getHeadCommit().getId());
+        // otherwise, point the new branch at the head commit
+        refs().update(branchName, refs().head(), Reflog.BRANCH);
+    }
+
+    /**
+     * Creates a tag on a commit. Without a message the tag is lightweight and
+     * holds the commit id; with one it is annotated and holds a Tag object
+     * recording the message and when it was made.
+     *
+     * @param tagName  the name of the new tag
+     * @param message  the message of an annotated tag, or null
+     * @param revision the commit to tag
+     */
+    public void tag(String tagName, String message, String revision) {
+        if (!gitletExists()) {
+            return;
+        }
+        if (!Refs.isValidName(tagName)) {
+            System.out.println("Invalid tag name.");
+            return;
+        }
+        if (tags().exists(tagName)) {
+            System.out.println("A tag with that name already exists.");
+            return;
+        }
+        Commit commit = loadCommitFromId(revision);
+        if (commit == null) {
+            return;
+        }
+        String id = message == null ? commit.getId()
+                : objectStore().writeTag(new Tag(tagName, commit.getId(), message));
+        tags().create(tagName, id);
+    }
+
+    /**
+     * Deletes a tag. The commit it named is left alone.
+     *
+     * @param tagName the name of the tag to delete
+     */
+    public void deleteTag(String tagName) {
+        if (!gitletExists()) {
+            return;
+        }
+        if (!tags().delete(tagName)) {
+            System.out.println("A tag with that name does not exist.");
+        }
+    }
+
+    /**
+     * Prints every tag in sorted order, each annotated one followed by its
+     * message.
+     */
+    public void listTags() {
+        if (!gitletExists()) {
+            return;
+        }
+        PrintWriter out = bufferedStdout();
+        for (Map.Entry<String, String> entry : tags().all().entrySet()) {
+            if (objectStore().hasTag(entry.getValue())) {
+                out.println(entry.getKey() + " " + objectStore().readTag(entry.getValue()).getMessage());
+            } else {
+                out.println(entry.getKey());
+            }
+        }
+        out.flush();
     }
 
     /**
@@ -488,23 +917,23 @@ public class Repository implements Serializable {
         if (!gitletExists()) {
             return;
         }
-        String txtName = branchName + ".txt";
-
-        if (!join(BRANCHES_DIR, txtName).exists()) {
+        String commitId = refs().resolve(branchName);
+        if (commitId == null) {
             System.out.println("No such branch exists.");
             return;
         }
-        if (readContentsAsString(currentBranch).equals(txtName)) {
+        if (refs().currentBranch().equals(branchName)) {
             System.out.println("No need to switch to the current branch.");
             return;
         }
-        String commitId = readContentsAsString(join(BRANCHES_DIR, txtName));
-        overwriteCWD(commitId);
+        if (!refsUnchanged() || !overwriteCWD(commitId)) {
+            return;
+        }
 
         // Clear the staging area and update currBranch and headCommit
         clearStagingArea();
-        writeContents(currentBranch, txtName);
-        writeContents(headCommit, commitId);
+        refs().setCurrentBranch(branchName);
+        refs().setHead(commitId, Reflog.SWITCH);
     }
 
     /**
@@ -516,15 +945,12 @@ public class Repository implements Serializable {
         if (!gitletExists()) {
             return;
         }
-        String txtName = branchName + ".txt";
-        File branch = join(BRANCHES_DIR, txtName);
-
-        if (!branch.exists()) {
+        if (!refs().exists(branchName)) {
             System.out.println("A branch with that name does not exist.");
-        } else if (txtName.equals(readContentsAsString(currentBranch))) {
+        } else if (branchName.equals(refs().currentBranch())) {
             System.out.println("Cannot remove the current branch.");
         } else {
-            branch.delete();
+            refs().delete(branchName);
         }
     }
 
@@ -538,34 +964,930 @@ public class Repository implements Serializable {
             return;
         }
 
-        if (!join(COMMITS_DIR, commitId).exists()) {
-            System.out.println("No commit with that id exists.");
+        // Load the new commit from the given ID or reflog entry
+        Commit newCommit = loadCommitFromId(commitId);
+        if (newCommit == null) {
             return;
         }
 
-        // Load the new commit from the given ID
-        Commit newCommit = loadCommitFromId(commitId);
-
+        if (!refsUnchanged()) {
+            return;
+        }
         // Overwrite the current working directory with the new commit's state
-        overwriteCWD(commitId);
+        if (!overwriteCWD(newCommit.getId())) {
+            return;
+        }
 
         // Clear the staging area
         clearStagingArea();
 
         // Update the current branch's HEAD and the global HEAD to the new commit
-        String currentBranch = readContentsAsString(Repository.currentBranch);
-        writeContents(join(BRANCHES_DIR, currentBranch), newCommit.getId());
-        writeContents(headCommit, newCommit.getId());
+        refs().update(refs().currentBranch(), newCommit.getId(), Reflog.RESET);
+        refs().setHead(newCommit.getId(), Reflog.RESET);
     }
 
 
     /**
-     * Merges changes from a branch.
+     * Merges the given branch into the current branch with a commit whose
+     * parents are both branch heads. Each file is merged against the latest
+     * common ancestor, the split point: a side that left a file unchanged
+     * takes the other side's version, and files changed differently on both
+     * sides are written with conflict markers. Files renamed on one side are
+     * matched with their split-point versions by content, so changes made to
+     * the old path on the other side follow the file to its new path.
      *
      * @param branchName the name of the branch to merge
      */
     public void merge(String branchName) {
-        // TODO: Implement merge logic
+        if (!gitletExists()) {
+            return;
+        }
+        if (!new WorkingTree(ADDING_AREA).files().isEmpty()
+                || !new WorkingTree(REMOVING_AREA).files().isEmpty()) {
+            System.out.println("You have uncommitted changes.");
+            return;
+        }
+        String givenId = refs().resolve(branchName);
+        if (givenId == null) {
+            System.out.println("A branch with that name does not exist.");
+            return;
+        }
+        String currentBranch = refs().currentBranch();
+        if (branchName.equals(currentBranch)) {
+            System.out.println("Cannot merge a branch with itself.");
+            return;
+        }
+
+        String headId = refs().head();
+        String splitId = splitPoint(headId, givenId);
+        if (splitId.equals(givenId)) {
+            System.out.println("Given branch is an ancestor of the current branch.");
+            return;
+        }
+        if (!refsUnchanged()) {
+            return;
+        }
+        if (splitId.equals(headId)) {
+            if (!overwriteCWD(givenId)) {
+                return;
+            }
+            refs().update(currentBranch, givenId, Reflog.MERGE);
+            refs().setHead(givenId, Reflog.MERGE);
+            System.out.println("Current branch fast-forwarded.");
+            return;
+        }
+
+        TreeMap<String, String> headFiles = getHeadCommit().getBlobs();
+        TreeMap<String, String> merged = new TreeMap<>();
+        boolean conflict = mergeFiles(objectStore().readCommit(splitId).getBlobs(), headFiles,
+                objectStore().readCommit(givenId).getBlobs(), merged);
+
+        if (!changeWorkingFiles(headFiles, merged)) {
+            return;
+        }
+
+        Commit mergeCommit = new Commit("Merged " + branchName + " into " + currentBranch + ".",
+                headId, givenId);
+        mergeCommit.getBlobs().putAll(merged);
+        objectStore().writeCommit(mergeCommit);
+        refs().setHead(mergeCommit.getId(), Reflog.MERGE);
+        refs().update(currentBranch, mergeCommit.getId(), Reflog.MERGE);
+        if (conflict) {
+            System.out.println("Encountered a merge conflict.");
+        }
+    }
+
+    /**
+     * Applies the changes a commit made to its first parent on top of the
+     * head commit, as a new commit with the same message. The changes are
+     * three-way merged with the parent as the base, so they apply even if
+     * the head commit has moved the files they touch; conflicting files
+     * are committed with conflict markers, as in merge.
+     *
+     * @param revision the commit to apply
+     */
+    public void cherryPick(String revision) {
+        if (!gitletExists()) {
+            return;
+        }
+        if (!new WorkingTree(ADDING_AREA).files().isEmpty()
+                || !new WorkingTree(REMOVING_AREA).files().isEmpty()) {
+            System.out.println("You have uncommitted changes.");
+            return;
+        }
+        Commit picked = loadCommitFromId(revision);
+        if (picked == null) {
+            return;
+        }
+        String parentId = picked.getParentIds().get(0);
+        if (parentId == null) {
+            System.out.println("Cannot cherry-pick the initial commit.");
+            return;
+        }
+
+        TreeMap<String, String> headFiles = getHeadCommit().getBlobs();
+        TreeMap<String, String> merged = new TreeMap<>();
+        boolean conflict = mergeFiles(objectStore().readCommit(parentId).getBlobs(), headFiles,
+                picked.getBlobs(), merged);
+        if (merged.equals(headFiles)) {
+            System.out.println("No changes to cherry-pick.");
+            return;
+        }
+        if (!refsUnchanged() || !changeWorkingFiles(headFiles, merged)) {
+            return;
+        }
+
+        Commit commit = new Commit(picked.getMessage(), refs().head());
+        commit.getBlobs().putAll(merged);
+        objectStore().writeCommit(commit);
+        refs().setHead(commit.getId(), Reflog.CHERRY_PICK);
+        refs().update(refs().currentBranch(), commit.getId(), Reflog.CHERRY_PICK);
+        if (conflict) {
+            System.out.println("Encountered a merge conflict.");
+        }
+    }
+
+    /**
+     * Replays the commits of the current branch since it split from another
+     * commit on top of that commit, and moves the branch to the last one.
+     * Each commit is applied as in cherry-pick, but entirely in memory: the
+     * new commits are built from the files of the previous one, and the
+     * working directory is only changed once, from the old head commit to
+     * the new one. Commits whose changes are already present are dropped.
+     * If any commit conflicts, nothing is changed.
+     *
+     * @param revision the commit to rebase onto, usually a branch
+     */
+    public void rebase(String revision) {
+        if (!gitletExists()) {
+            return;
+        }
+        if (!new WorkingTree(ADDING_AREA).files().isEmpty()
+                || !new WorkingTree(REMOVING_AREA).files().isEmpty()) {
+            System.out.println("You have uncommitted changes.");
+            return;
+        }
+        Commit onto = loadCommitFromId(revision);
+        if (onto == null) {
+            return;
+        }
+        String headId = refs().head();
+        String currentBranch = refs().currentBranch();
+        String splitId = splitPoint(headId, onto.getId());
+        if (splitId.equals(onto.getId())) {
+            System.out.println("Current branch is up to date.");
+            return;
+        }
+        if (!refsUnchanged()) {
+            return;
+        }
+        if (splitId.equals(headId)) {
+            if (!overwriteCWD(onto.getId())) {
+                return;
+            }
+            refs().update(currentBranch, onto.getId(), Reflog.REBASE);
+            refs().setHead(onto.getId(), Reflog.REBASE);
+            System.out.println("Current branch fast-forwarded.");
+            return;
+        }
+
+        // the commits to replay, oldest first; a merge commit is replayed
+        // as the changes it made to its first parent
+        Set<String> upstream = objectStore().graph().ancestors(onto.getId());
+        Deque<String> replay = new ArrayDeque<>();
+        for (String id = headId; !upstream.contains(id); id = objectStore().graph().firstParent(id, 1)) {
+            replay.push(id);
+        }
+
+        String newId = onto.getId();
+        TreeMap<String, String> files = onto.getBlobs();
+        for (String id : replay) {
+            Commit commit = objectStore().readCommit(id);
+            TreeMap<String, String> merged = new TreeMap<>();
+            if (mergeFiles(objectStore().readCommit(commit.getParentIds().get(0)).getBlobs(), files,
+                    commit.getBlobs(), merged)) {
+                System.out.println("Encountered a merge conflict in " + id.substring(0, 7)
+                        + "; nothing was rebased.");
+                return;
+            }
+            if (merged.equals(files)) {
+                continue;
+            }
+            Commit rebased = new Commit(commit.getMessage(), newId);
+            rebased.getBlobs().putAll(merged);
+            objectStore().writeCommit(rebased);
+            newId = rebased.getId();
+            files = merged;
+        }
+
+        if (!changeWorkingFiles(getHeadCommit().getBlobs(), files)) {
+            return;
+        }
+        refs().update(currentBranch, newId, Reflog.REBASE);
+        refs().setHead(newId, Reflog.REBASE);
+    }
+
+    /**
+     * Returns the latest common ancestor of commits HEADID and OTHERID: of
+     * the ancestors of OTHERID, the one the fewest parent steps from HEADID.
+     */
+    private String splitPoint(String headId, String otherId) {
+        Set<String> otherAncestors = objectStore().graph().ancestors(otherId);
+        Set<String> seen = new HashSet<>();
+        Deque<String> queue = new ArrayDeque<>();
+        queue.add(headId);
+        while (!queue.isEmpty()) {
+            String id = queue.remove();
+            if (otherAncestors.contains(id)) {
+                return id;
+            }
+            for (String parent : objectStore().graph().parents(id)) {
+                if (seen.add(parent)) {
+                    queue.add(parent);
+                }
+            }
+        }
+        // every history starts at the same initial commit
+        throw error("No common ancestor.");
+    }
+
+    /**
+     * Three-way merges the files of OURS and THEIRS, which both descend
+     * from SPLIT, into MERGED. Renames on either side since SPLIT are
+     * detected first, so a file is merged with itself under its new path.
+     * Conflicting contents are stored as a new blob with conflict markers.
+     * A file the two sides renamed to different paths is kept under both,
+     * each with that side's contents, and counts as a conflict.
+     *
+     * @return whether there was a conflict
+     */
+    private boolean mergeFiles(Map<String, String> split, Map<String, String> ours,
+                               Map<String, String> theirs, Map<String, String> merged) {
+        Map<String, String> ourRenames = renamesSince(split, ours);
+        Map<String, String> theirRenames = renamesSince(split, theirs);
+        Set<String> claimedOurs = new HashSet<>();
+        Set<String> claimedTheirs = new HashSet<>();
+        boolean conflict = false;
+
+        for (Map.Entry<String, String> entry : split.entrySet()) {
+            String path = entry.getKey();
+            String ourPath = ourRenames.getOrDefault(path, path);
+            String theirPath = theirRenames.getOrDefault(path, path);
+            claimedOurs.add(ourPath);
+            claimedTheirs.add(theirPath);
+            if (!ourPath.equals(path) && !theirPath.equals(path) && !ourPath.equals(theirPath)) {
+                merged.put(ourPath, ours.get(ourPath));
+                merged.put(theirPath, theirs.get(theirPath));
+                conflict = true;
+                continue;
+            }
+            String target = !ourPath.equals(path) ? ourPath : theirPath;
+            conflict |= mergeFile(target, entry.getValue(), ours.get(ourPath), theirs.get(theirPath), merged);
+        }
+        // files added since the split point
+        Set<String> added = new TreeSet<>(ours.keySet());
+        added.addAll(theirs.keySet());
+        for (String path : added) {
+            String ourId = claimedOurs.contains(path) ? null : ours.get(path);
+            String theirId = claimedTheirs.contains(path) ? null : theirs.get(path);
+            if (ourId == null && theirId == null) {
+                continue;
+            }
+            // a file renamed to this path stands in for the side that did not add it
+            String renamedId = merged.get(path);
+            conflict |= mergeFile(path, null, ourId == null ? renamedId : ourId,
+                    theirId == null ? renamedId : theirId, merged);
+        }
+        return conflict;
+    }
+
+    /**
+     * Returns the renames between BEFORE and AFTER, from old path to new.
+     */
+    private Map<String, String> renamesSince(Map<String, String> before, Map<String, String> after) {
+        Map<String, String> removed = new HashMap<>();
+        Map<String, String> added = new HashMap<>();
+        for (Map.Entry<String, String> entry : before.entrySet()) {
+            if (!after.containsKey(entry.getKey())) {
+                removed.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (Map.Entry<String, String> entry : after.entrySet()) {
+            if (!before.containsKey(entry.getKey())) {
+                added.put(entry.getKey(), entry.getValue());
+            }
+        }
+        Map<String, String> renames = new HashMap<>();
+        if (!removed.isEmpty() && !added.isEmpty()) {
+            for (RenameDetector.Match match : new RenameDetector(objectStore()).renames(removed, added)) {
+                renames.put(match.source, match.target);
+            }
+        }
+        return renames;
+    }
+
+    /**
+     * Merges one file at PATH whose blob was BASEID at the split point and
+     * is OURID and THEIRID on the two sides, each null if absent, and
+     * records the result in MERGED.
+     *
+     * @return whether the sides conflict
+     */
+    private boolean mergeFile(String path, String baseId, String ourId, String theirId,
+                              Map<String, String> merged) {
+        String result;
+        boolean conflict = false;
+        if (Objects.equals(ourId, theirId) || Objects.equals(baseId, theirId)) {
+            result = ourId;
+        } else if (Objects.equals(baseId, ourId)) {
+            result = theirId;
+        } else {
+            String ourContents = ourId == null ? ""
+                    : new String(objectStore().readBlob(ourId), StandardCharsets.UTF_8);
+            String theirContents = theirId == null ? ""
+                    : new String(objectStore().readBlob(theirId), StandardCharsets.UTF_8);
+            String contents = "<<<<<<< HEAD\n" + ourContents + "=======\n" + theirContents + ">>>>>>>\n";
+            result = objectStore().writeBlob(contents.getBytes(StandardCharsets.UTF_8));
+            conflict = true;
+        }
+        if (result == null) {
+            merged.remove(path);
+        } else {
+            merged.put(path, result);
+        }
+        return conflict;
+    }
+
+    /**
+     * Saves the staged changes and the changes to tracked working files on
+     * the stash, then returns the staging area and those files to the head
+     * commit. Unchanged files keep their blob ids, so only modified files
+     * are stored. Untracked files are left alone.
+     *
+     * @param message describes the changes, or null for a default
+     */
+    public void stashPush(String message) {
+        if (!gitletExists()) {
+            return;
+        }
+        Commit head = getHeadCommit();
+        TreeMap<String, String> headFiles = head.getBlobs();
+        TreeMap<String, String> index = new TreeMap<>(headFiles);
+        for (String path : new WorkingTree(ADDING_AREA).files()) {
+            index.put(path, objectStore().writeBlob(readContents(join(ADDING_AREA, path))));
+        }
+        for (String path : new WorkingTree(REMOVING_AREA).files()) {
+            index.remove(path);
+        }
+        TreeMap<String, String> work = new TreeMap<>();
+        for (Map.Entry<String, String> entry : index.entrySet()) {
+            String path = entry.getKey();
+            File file = join(CWD, path);
+            if (!sparse().includes(path)) {
+                // not checked out, so it cannot have changed
+                work.put(path, entry.getValue());
+            } else if (file.isFile()) {
+                byte[] contents = readContents(file);
+                work.put(path, isSameBlob(entry.getValue(), path, contents, sha1(contents))
+                        ? entry.getValue() : objectStore().writeBlob(contents));
+            }
+        }
+        if (index.equals(headFiles) && work.equals(index)) {
+            System.out.println("No local changes to save.");
+            return;
+        }
+
+        if (message == null) {
+            message = "WIP on " + refs().currentBranch() + ": " + head.getId().substring(0, 7)
+                    + " " + head.getMessage();
+        }
+        Stash.Entry entry = new Stash.Entry(head.getId(), objectStore().writeTree(index),
+                objectStore().writeTree(work), message);
+        // nothing is recorded or cleared unless the files can be put back
+        if (!changeWorkingFiles(work, headFiles)) {
+            return;
+        }
+        stash().push(entry);
+        clearStagingArea();
+    }
+
+    /**
+     * Applies a stash entry to the working directory and, if it was made on
+     * the head commit, restores its staging area too. An entry made on
+     * another commit is three-way merged into the head commit's files. The
+     * entry is then dropped if DROP is true and there was no conflict.
+     *
+     * @param index which entry, as N or stash@{N}, or null for the newest
+     * @param drop  whether to drop the entry once it is applied
+     */
+    public void stashApply(String index, boolean drop) {
+        if (!gitletExists()) {
+            return;
+        }
+        int n = stashIndex(index);
+        if (n < 0) {
+            return;
+        }
+        if (!new WorkingTree(ADDING_AREA).files().isEmpty()
+                || !new WorkingTree(REMOVING_AREA).files().isEmpty()) {
+            System.out.println("You have uncommitted changes.");
+            return;
+        }
+        Stash.Entry entry = stash().get(n);
+        TreeMap<String, String> headFiles = getHeadCommit().getBlobs();
+        TreeMap<String, String> work = objectStore().readTree(entry.workTree);
+        boolean onHead = entry.baseId.equals(refs().head());
+        TreeMap<String, String> merged = work;
+        boolean conflict = false;
+        if (!onHead) {
+            merged = new TreeMap<>();
+            conflict = mergeFiles(objectStore().readCommit(entry.baseId).getBlobs(), headFiles, work, merged);
+        }
+
+        // only files that still match the head commit may be replaced
+        Set<String> paths = new TreeSet<>(sparse().select(headFiles).keySet());
+        paths.addAll(sparse().select(merged).keySet());
+        for (String path : paths) {
+            String headId = headFiles.get(path);
+            if (Objects.equals(headId, merged.get(path))) {
+                continue;
+            }
+            File file = join(CWD, path);
+            byte[] contents = file.isFile() ? readContents(file) : null;
+            boolean unchanged = headId == null ? !file.exists()
+                    : contents != null && isSameBlob(headId, path, contents, sha1(contents));
+            if (!unchanged) {
+                System.out.println("Your local changes to " + path + " would be overwritten; commit or stash them first.");
+                return;
+            }
+        }
+        if (!changeWorkingFiles(headFiles, merged)) {
+            return;
+        }
+
+        if (onHead) {
+            TreeMap<String, String> staged = objectStore().readTree(entry.indexTree);
+            for (Map.Entry<String, String> file : staged.entrySet()) {
+                if (!file.getValue().equals(headFiles.get(file.getKey()))) {
+                    objectStore().copyBlobTo(file.getValue(), WorkingTree.prepare(ADDING_AREA, file.getKey()));
+                }
+            }
+            for (Map.Entry<String, String> file : headFiles.entrySet()) {
+                if (!staged.containsKey(file.getKey())) {
+                    objectStore().copyBlobTo(file.getValue(), WorkingTree.prepare(REMOVING_AREA, file.getKey()));
+                }
+            }
+        }
+        if (conflict) {
+            System.out.println("Encountered a merge conflict.");
+        } else if (drop) {
+            stash().drop(n);
+        }
+    }
+
+    /**
+     * Prints the stash entries, newest first, as stash@{N}: MESSAGE.
+     */
+    public void stashList() {
+        if (!gitletExists()) {
+            return;
+        }
+        PrintWriter out = bufferedStdout();
+        List<Stash.Entry> entries = stash().entries();
+        for (int i = 0; i < entries.size(); i += 1) {
+            out.println("stash@{" + i + "}: " + entries.get(i).message);
+        }
+        out.flush();
+    }
+
+    /**
+     * Deletes a stash entry without applying it.
+     *
+     * @param index which entry, as N or stash@{N}, or null for the newest
+     */
+    public void stashDrop(String index) {
+        if (!gitletExists()) {
+            return;
+        }
+        int n = stashIndex(index);
+        if (n >= 0) {
+            stash().drop(n);
+        }
+    }
+
+    /**
+     * Returns the position of the stash entry INDEX names, written as N or
+     * stash@{N}, with null naming the newest. Prints an error and returns
+     * -1 if there is no such entry.
+     */
+    private int stashIndex(String index) {
+        if (stash().entries().isEmpty()) {
+            System.out.println("No stash entries found.");
+            return -1;
+        }
+        int n = -1;
+        if (index == null) {
+            n = 0;
+        } else {
+            String number = index.startsWith("stash@{") && index.endsWith("}")
+                    ? index.substring("stash@{".length(), index.length() - 1) : index;
+            try {
+                n = Integer.parseInt(number);
+            } catch (NumberFormatException excp) {
+                n = -1;
+            }
+        }
+        if (stash().get(n) == null) {
+            System.out.println("No stash entry with that index exists.");
+            return -1;
+        }
+        return n;
+    }
+
+    /**
+     * Saves the .gitlet directory at PATH under the name REMOTENAME.
+     * Directories in PATH are separated by forward slashes. PATH must name
+     * an existing .gitlet directory.
+     *
+     * @param remoteName the name of the remote
+     * @param path       the remote's .gitlet directory
+     */
+    public void addRemote(String remoteName, String path) {
+        if (!gitletExists()) {
+            return;
+        }
+        if (!Refs.isValidName(remoteName)) {
+            System.out.println("Invalid remote name.");
+            return;
+        }
+        Config config = new Config(GITLET_DIR);
+        if (config.get(remoteKey(remoteName), null) != null) {
+            System.out.println("A remote with that name already exists.");
+            return;
+        }
+        if (!isGitletDir(remotePath(path))) {
+            System.out.println("Remote directory not found.");
+            return;
+        }
+        config.set(remoteKey(remoteName), path);
+    }
+
+    /**
+     * Forgets the remote REMOTENAME.
+     *
+     * @param remoteName the name of the remote
+     */
+    public void removeRemote(String remoteName) {
+        if (!gitletExists()) {
+            return;
+        }
+        Config config = new Config(GITLET_DIR);
+        if (config.get(remoteKey(remoteName), null) == null) {
+            System.out.println("A remote with that name does not exist.");
+            return;
+        }
+        config.unset(remoteKey(remoteName));
+    }
+
+    /**
+     * Copies the commits of the current branch that remote REMOTENAME is
+     * missing to it, and points its branch REMOTEBRANCH at the head commit.
+     * The remote branch must be in the history of the head commit.
+     *
+     * @param remoteName   the name of the remote
+     * @param remoteBranch the remote branch to update
+     */
+    public void push(String remoteName, String remoteBranch) {
+        if (!gitletExists()) {
+            return;
+        }
+        if (!Refs.isValidName(remoteBranch)) {
+            System.out.println("Invalid branch name.");
+            return;
+        }
+        File remoteDir = remoteDir(remoteName);
+        if (remoteDir == null) {
+            return;
+        }
+        RepositoryLock lock = RepositoryLock.acquire(remoteDir);
+        try {
+            Refs remoteRefs = new Refs(remoteDir);
+            String remoteHead = remoteRefs.resolve(remoteBranch);
+            String headId = refs().head();
+            if (remoteHead != null && !objectStore().graph().ancestors(headId).contains(remoteHead)) {
+                System.out.println("Please pull down remote changes before pushing.");
+                return;
+            }
+
+            ObjectStore remoteStore = new ObjectStore(remoteDir);
+            remoteStore.setLockHeld(true);
+            new Pack(objectStore(), remoteStore, join(remoteDir, "incoming.pack")).send(headId);
+            remoteStore.flush();
+            remoteRefs.update(remoteBranch, headId, Reflog.PUSH);
+            if (remoteRefs.currentBranch().equals(remoteBranch)) {
+                remoteRefs.setHead(headId, Reflog.PUSH);
+            }
+            remoteRefs.flush();
+        } finally {
+            lock.close();
+        }
+    }
+
+    /**
+     * Copies the commits of branch REMOTEBRANCH of remote REMOTENAME that
+     * this repository is missing, and points the local branch
+     * REMOTENAME/REMOTEBRANCH at it.
+     *
+     * @param remoteName   the name of the remote
+     * @param remoteBranch the remote branch to fetch
+     * @return the name of the local branch, or null if nothing was fetched
+     */
+    public String fetch(String remoteName, String remoteBranch) {
+        if (!gitletExists()) {
+            return null;
+        }
+        if (!Refs.isValidName(remoteBranch)) {
+            System.out.println("Invalid branch name.");
+            return null;
+        }
+        File remoteDir = remoteDir(remoteName);
+        if (remoteDir == null) {
+            return null;
+        }
+        String remoteHead = new Refs(remoteDir).resolve(remoteBranch);
+        if (remoteHead == null) {
+            System.out.println("That remote does not have that branch.");
+            return null;
+        }
+
+        new Pack(new ObjectStore(remoteDir), objectStore(), join(GITLET_DIR, "incoming.pack")).send(remoteHead);
+        String localBranch = remoteName + "/" + remoteBranch;
+        refs().update(localBranch, remoteHead, Reflog.FETCH);
+        return localBranch;
+    }
+
+    /**
+     * Fetches branch REMOTEBRANCH of remote REMOTENAME and merges it into the
+     * current branch.
+     *
+     * @param remoteName   the name of the remote
+     * @param remoteBranch the remote branch to pull
+     */
+    public void pull(String remoteName, String remoteBranch) {
+        String localBranch = fetch(remoteName, remoteBranch);
+        if (localBranch != null) {
+            merge(localBranch);
+        }
+    }
+
+    private static String remoteKey(String remoteName) {
+        return "remote." + remoteName + ".path";
+    }
+
+    /**
+     * Returns the .gitlet directory of remote REMOTENAME, or prints an error
+     * and returns null if it is not known or does not exist.
+     */
+    private File remoteDir(String remoteName) {
+        String path = new Config(GITLET_DIR).get(remoteKey(remoteName), null);
+        File dir = path == null ? null : remotePath(path);
+        if (dir == null || !isGitletDir(dir)) {
+            System.out.println("Remote directory not found.");
+            return null;
+        }
+        return dir;
+    }
+
+    /** Returns the file named by PATH, whose directories are separated by
+     *  forward slashes, resolving it against the working directory. */
+    private static File remotePath(String path) {
+        File dir = new File(path.replace("/", File.separator));
+        return dir.isAbsolute() ? dir : join(CWD, dir.getPath());
+    }
+
+    /** Returns true if DIR is the .gitlet directory of a repository. */
+    private static boolean isGitletDir(File dir) {
+        return dir.getName().equals(GITLET_DIR.getName()) && dir.isDirectory()
+                && join(dir, "headcommit.txt").isFile();
+    }
+
+    /**
+     * Deletes commits, trees, blobs and annotated tags that cannot be reached
+     * from any branch or tag, from the HEAD, from the stash or from a reflog
+     * entry younger than GC_GRACE_PERIOD_MS. Unreachable objects younger than
+     * GC_GRACE_PERIOD_MS are kept too. PRUNENOW ignores the grace period for
+     * both, so only refs and the stash keep anything.
+     *
+     * @param pruneNow whether to ignore the grace period
+     */
+    public void gc(boolean pruneNow) {
+        if (!gitletExists()) {
+            return;
+        }
+
+        // Mark: walk every commit reachable from the refs, iteratively so
+        // long histories cannot overflow the stack.
+        Set<String> liveCommits = new HashSet<>();
+        Set<String> liveTrees = new HashSet<>();
+        Set<String> liveBlobs = new HashSet<>();
+        Deque<String> toVisit = new ArrayDeque<>();
+        toVisit.push(refs().head());
+        for (String branchName : refs().names()) {
+            toVisit.push(refs().resolve(branchName));
+        }
+        // stashed trees are marked here, as no commit points at them
+        for (Stash.Entry entry : stash().entries()) {
+            toVisit.push(entry.baseId);
+            for (String treeId : List.of(entry.indexTree, entry.workTree)) {
+                liveTrees.add(treeId);
+                liveBlobs.addAll(objectStore().readTree(treeId).values());
+            }
+        }
+        Set<String> liveTags = new HashSet<>();
+        for (String id : tags().all().values()) {
+            // liveness is decided on disk, never by the object filter, which
+            // may be missing an object another process stored
+            if (objectStore().tagFile(id).exists()) {
+                liveTags.add(id);
+                toVisit.push(objectStore().readTag(id).getCommitId());
+            } else {
+                toVisit.push(id);
+            }
+        }
+        // a reflog entry keeps its commit only through the grace period, so
+        // commits reset away can still be collected
+        long cutoff = pruneNow ? Long.MAX_VALUE : System.currentTimeMillis() - GC_GRACE_PERIOD_MS;
+        for (String ref : refs().reflog().refs()) {
+            for (Reflog.Entry entry : refs().reflog().entries(ref)) {
+                if (entry.time >= cutoff) {
+                    toVisit.push(entry.newId);
+                }
+            }
+        }
+        while (!toVisit.isEmpty()) {
+            String commitId = toVisit.pop();
+            if (!liveCommits.add(commitId)) {
+                continue;
+            }
+            if (!objectStore().commitFile(commitId).exists()) {
+                continue;
+            }
+            Commit commit = objectStore().readCommit(commitId);
+            if (commit.getTreeId() == null || liveTrees.add(commit.getTreeId())) {
+                liveBlobs.addAll(commit.getBlobs().values());
+            }
+            for (String parentId : commit.getParentIds()) {
+                // the initial commit records a null parent
+                if (parentId != null) {
+                    toVisit.push(parentId);
+                }
+            }
+        }
+
+        // Sweep: collect everything unmarked and past the grace period, then
+        // delete in parallel since each deletion is an independent syscall.
+        List<File> garbage = new ArrayList<>();
+        collectGarbage(COMMITS_DIR, liveCommits, cutoff, garbage);
+        collectGarbage(BLOBS_DIR, liveBlobs, cutoff, garbage);
+        if (TREES_DIR.exists()) {
+            collectGarbage(TREES_DIR, liveTrees, cutoff, garbage);
+        }
+        if (TAGS_DIR.exists()) {
+            collectGarbage(TAGS_DIR, liveTags, cutoff, garbage);
+        }
+        // temporary files left by interrupted object writes
+        File tmpDir = join(GITLET_DIR, "tmp");
+        if (tmpDir.exists()) {
+            collectGarbage(tmpDir, Collections.emptySet(), cutoff, garbage);
+        }
+
+        LongAdder reclaimedBytes = new LongAdder();
+        LongAdder reclaimedFiles = new LongAdder();
+        garbage.parallelStream().forEach(file -> {
+            long size = file.length();
+            if (file.delete()) {
+                reclaimedBytes.add(size);
+                reclaimedFiles.increment();
+            }
+        });
+        if (reclaimedFiles.sum() > 0) {
+            objectStore().journal().rebuild();
+            objectStore().graph().rebuild();
+            objectStore().filter().rebuild();
+        }
+        System.out.println("Removed " + reclaimedFiles.sum() + " unreachable objects, reclaimed "
+                + reclaimedBytes.sum() + " bytes.");
+    }
+
+    private void collectGarbage(File dir, Set<String> live, long cutoff, List<File> garbage) {
+        for (String name : plainFilenamesIn(dir)) {
+            File file = join(dir, name);
+            if (!live.contains(name) && file.lastModified() < cutoff) {
+                garbage.add(file);
+            }
+        }
+    }
+
+    /**
+     * Checks that every object hashes to its id and that every reference
+     * between objects, and from refs to objects, leads to an existing one.
+     * Prints each problem found, then how much was checked and how fast.
+     *
+     * @param incremental whether to check only objects written since the
+     *                    last check that found no problems
+     */
+    public void fsck(boolean incremental) {
+        if (!gitletExists()) {
+            return;
+        }
+        long start = System.nanoTime();
+        Fsck fsck = new Fsck(GITLET_DIR, objectStore());
+        List<String> problems = fsck.run(incremental, refs(), tags());
+        long elapsedMs = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+
+        PrintWriter out = bufferedStdout();
+        for (String problem : problems) {
+            out.println(problem);
+        }
+        out.printf("Checked %d objects (%d bytes) in %d ms, %.1f MB/s.%n", fsck.checkedObjects(),
+                fsck.checkedBytes(), elapsedMs, fsck.checkedBytes() / 1e6 / (elapsedMs / 1000.0));
+        if (problems.isEmpty()) {
+            out.println("No problems found.");
+        } else {
+            out.println(problems.size() + (problems.size() == 1 ? " problem" : " problems") + " found.");
+        }
+        out.flush();
+    }
+
+    /**
+     * Prints the value of the configuration setting KEY, or sets it to VALUE
+     * if VALUE is not null. A value a known setting cannot take is refused.
+     *
+     * @param key   the name of the setting, e.g. core.compression
+     * @param value the new value, or null to print the current one
+     */
+    public void config(String key, String value) {
+        if (!gitletExists()) {
+            return;
+        }
+        Config config = new Config(GITLET_DIR);
+        if (value == null) {
+            String current = config.get(key, null);
+            if (current != null) {
+                System.out.println(current);
+            }
+        } else if (Config.check(key, value) != null) {
+            System.out.println(Config.check(key, value));
+        } else {
+            config.set(key, value);
+        }
+    }
+
+    /**
+     * Rewrites every commit so that its blobs are named by the SHA-1 of their
+     * contents alone. Earlier versions hashed the file name together with the
+     * contents. Commit ids do not depend on blob ids, so history, branches
+     * and the HEAD are unaffected. The old blobs become unreachable and are
+     * removed by a later gc.
+     */
+    public void migrateBlobs() {
+        if (!gitletExists()) {
+            return;
+        }
+
+        int migratedCommits = 0;
+        for (String commitId : plainFilenamesIn(COMMITS_DIR)) {
+            Commit commit = objectStore().readCommit(commitId);
+            boolean changed = false;
+
+            for (Map.Entry<String, String> entry : commit.getBlobs().entrySet()) {
+                if (!objectStore().hasBlob(entry.getValue())) {
+                    continue;
+                }
+                String newId = objectStore().writeBlob(objectStore().readBlob(entry.getValue()));
+                if (!newId.equals(entry.getValue())) {
+                    entry.setValue(newId);
+                    changed = true;
+                }
+            }
+
+            if (changed) {
+                objectStore().writeCommit(commit);
+                migratedCommits += 1;
+            }
+        }
+        System.out.println("Migrated " + migratedCommits + " commits to content-addressed blobs.");
+    }
+
+    /**
+     * Moves every branch into the packed-refs table, so that looking up and
+     * listing branches stays fast however many there are.
+     */
+    public void packRefs() {
+        if (!gitletExists()) {
+            return;
+        }
+        refs().pack();
     }
 
     /**
@@ -585,48 +1907,177 @@ public class Repository implements Serializable {
         return true;
     }
 
-    public static Commit getHeadCommit() {
-        String headCommitId = readContentsAsString(headCommit);
-        File currCommitFile = join(COMMITS_DIR, headCommitId);
-        Commit currCommit = readObject(currCommitFile, Commit.class);
-        return currCommit;
+    public Commit getHeadCommit() {
+        return objectStore().readCommit(refs().head());
+    }
+
+    /**
+     * Returns true if the HEAD, the current branch and every other ref this
+     * command has read still hold what it read. Otherwise says that another
+     * process moved one and returns false. Commands that move refs call
+     * this before their first change to the staging area or the working
+     * directory, so a conflict leaves nothing half done.
+     */
+    private boolean refsUnchanged() {
+        try {
+            refs().head();
+            refs().resolve(refs().currentBranch());
+            refs().checkUnchanged();
+            return true;
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+            return false;
+        }
     }
 
     public void clearStagingArea() {
-        for (String filename : plainFilenamesIn(ADDING_AREA)) {
-            join(ADDING_AREA, filename).delete();
+        for (String filename : new WorkingTree(ADDING_AREA).files()) {
+            WorkingTree.delete(ADDING_AREA, filename);
         }
-        for (String filename : plainFilenamesIn(REMOVING_AREA)) {
-            join(REMOVING_AREA, filename).delete();
+        for (String filename : new WorkingTree(REMOVING_AREA).files()) {
+            WorkingTree.delete(REMOVING_AREA, filename);
         }
     }
 
-    public void overwriteCWD(String commitId) {
-        TreeMap<String, String> trackedFiles = getHeadCommit().getBlobs();
-        List<String> CWDFiles = plainFilenamesIn(CWD);
-        Commit newCommit = loadCommitFromId(commitId);
-        TreeMap<String, String> newTrackedFiles = newCommit.getBlobs();
+    /**
+     * Replaces the files tracked by the head commit with those of commit
+     * COMMITID. Files tracked only by the head commit are deleted, along with
+     * any directories this empties, and directories are created as needed.
+     * Only files inside the sparse-checkout definition are touched. Nothing
+     * is changed if an untracked file would be overwritten.
+     *
+     * @return false if an untracked file was in the way
+     */
+    public boolean overwriteCWD(String commitId) {
+        return replaceWorkingFiles(sparse().select(getHeadCommit().getBlobs()),
+                sparse().select(objectStore().readCommit(commitId).getBlobs()), true);
+    }
 
-        for (String file: CWDFiles) {
-            if (!trackedFiles.containsKey(file) && newTrackedFiles.containsKey(file)) {
+    /**
+     * Changes the working directory from holding OLDFILES to holding
+     * NEWFILES, both maps from paths to blob ids. Paths only in OLDFILES are
+     * deleted and paths only in NEWFILES are written. Paths in both are
+     * rewritten only if REWRITEKEPT. Nothing is changed if a path only in
+     * NEWFILES already exists, since it is not a file Gitlet put there.
+     *
+     * @return false if an untracked file was in the way
+     */
+    private boolean replaceWorkingFiles(Map<String, String> oldFiles, Map<String, String> newFiles,
+                                        boolean rewriteKept) {
+        // only files the new commit tracks can be clobbered, so there is no
+        // need to list the working directory
+        for (String file : newFiles.keySet()) {
+            if (!oldFiles.containsKey(file) && join(CWD, file).exists()) {
                 System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
-                return;
-            } else if (trackedFiles.containsKey(file) && !newTrackedFiles.containsKey(file)) {
-                join(Repository.CWD, file).delete();
-            } else if (trackedFiles.containsKey(file) && newTrackedFiles.containsKey(file)) {
-                join(Repository.CWD, file).delete();
-                File overwrittenFile = join(Repository.CWD, file);
-                writeContents(overwrittenFile, readContentsAsString(join(BLOBS_DIR, newTrackedFiles.get(file))));
+                return false;
+            }
+        }
+
+        for (String file : oldFiles.keySet()) {
+            if (!newFiles.containsKey(file)) {
+                WorkingTree.delete(CWD, file);
+            }
+        }
+        for (Map.Entry<String, String> entry : newFiles.entrySet()) {
+            if (rewriteKept || !oldFiles.containsKey(entry.getKey())) {
+                checkoutFile(entry.getKey(), entry.getValue());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Changes the working directory from holding the files of OLDFILES to
+     * those of NEWFILES, both maps from paths to blob ids, writing only the
+     * files that differ. Only files inside the sparse-checkout definition
+     * are touched.
+     *
+     * @return false if an untracked file was in the way
+     */
+    private boolean changeWorkingFiles(TreeMap<String, String> oldFiles, TreeMap<String, String> newFiles) {
+        Map<String, String> before = sparse().select(oldFiles);
+        Map<String, String> after = sparse().select(newFiles);
+        if (!replaceWorkingFiles(before, after, false)) {
+            return false;
+        }
+        for (Map.Entry<String, String> entry : after.entrySet()) {
+            String oldId = before.get(entry.getKey());
+            if (oldId != null && !oldId.equals(entry.getValue())) {
+                checkoutFile(entry.getKey(), entry.getValue());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Limits the working directory to the files under PATHS, or checks out
+     * every file again if PATHS is null. Tracked files leaving the definition
+     * are deleted and those entering it are checked out from the head
+     * commit; files that stay are left as they are.
+     *
+     * @param paths the directories and files to keep, or null to disable
+     */
+    public void sparseCheckout(List<String> paths) {
+        if (!gitletExists()) {
+            return;
+        }
+        List<String> prefixes = new ArrayList<>();
+        if (paths != null) {
+            for (String path : paths) {
+                String prefix = WorkingTree.normalize(path);
+                if (prefix == null) {
+                    System.out.println("The path " + path + " is outside the working directory.");
+                    return;
+                }
+                prefixes.add(prefix);
             }
         }
-        // handles the case when there's no such file in CWD but there's in the newBranch.
-        // the following is an enhanced for loop for a TreeMap
-        for (Map.Entry<String, String> entry : newTrackedFiles.entrySet()) {
-            String file = entry.getKey();
-            if (!join(CWD, file).exists()) {
-                File overwrittenFile = join(CWD, file);
-                writeContents(overwrittenFile, readContentsAsString(join(BLOBS_DIR, newTrackedFiles.get(file))));
+        if (prefixes.contains("")) {
+            // the whole working directory is the same as no definition
+            paths = null;
+        }
+
+        TreeMap<String, String> headFiles = getHeadCommit().getBlobs();
+        Map<String, String> before = sparse().select(headFiles);
+        SparseCheckout next = new SparseCheckout(GITLET_DIR);
+        if (paths == null) {
+            next.disable();
+        } else {
+            next.set(prefixes);
+        }
+        if (!replaceWorkingFiles(before, next.select(headFiles), false)) {
+            // put the old definition back
+            if (sparse().isEnabled()) {
+                next.set(sparse().prefixes());
+            } else {
+                next.disable();
             }
+            return;
+        }
+        sparse = next;
+    }
+
+    /**
+     * Prints the sparse-checkout definition, one path per line.
+     */
+    public void sparseCheckoutList() {
+        if (!gitletExists()) {
+            return;
+        }
+        for (String prefix : sparse().prefixes()) {
+            System.out.println(prefix);
+        }
+    }
+
+    /**
+     * Writes the contents of blob BLOBID to the working file at PATH,
+     * replacing it if it exists and creating its directories if not.
+     */
+    private void checkoutFile(String path, String blobId) {
+        File file = WorkingTree.prepare(CWD, path);
+        if (file.exists()) {
+            file.delete();
         }
+        objectStore().checkoutBlob(blobId, file);
     }
 }
@@ -0,0 +1,68 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+
+import static gitlet.Utils.*;
+
+/** An exclusive lock on a repository, held by a command that changes it.
+ *
+ *  The lock is an operating-system lock on .gitlet/index.lock, so it is
+ *  released when the process exits even if it crashes, and a second
+ *  process that wants it waits until it is free. Commands that only read
+ *  do not take it: objects are never changed once written and refs are
+ *  replaced by renaming, so a reader always sees a complete state.
+ *
+ *  @author Gabriel and Umar
+ */
+class RepositoryLock implements AutoCloseable {
+
+    /** The open lock file. */
+    private final FileChannel channel;
+
+    /** The lock held on CHANNEL. */
+    private final FileLock lock;
+
+    private RepositoryLock(FileChannel channel, FileLock lock) {
+        this.channel = channel;
+        this.lock = lock;
+    }
+
+    /** Waits for and returns the lock on the repository whose .gitlet
+     *  directory is GITLETDIR, or returns null if there is no repository
+     *  yet. */
+    static RepositoryLock acquire(File gitletDir) {
+        if (!gitletDir.isDirectory()) {
+            return null;
+        }
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(join(gitletDir, "index.lock").toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            return new RepositoryLock(channel, channel.lock());
+        } catch (IOException excp) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // the lock was never taken
+                }
+            }
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
+    /** Releases the lock. */
+    @Override
+    public void close() {
+        try {
+            lock.release();
+            channel.close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package gitlet;
+
+import java.util.List;
+
+/** Resolves revision expressions to commit ids.
+ *
+ *  An expression is a base followed by any number of suffixes. The base is
+ *  HEAD, a branch name, a tag name, REF@{N} for the commit REF pointed at N
+ *  moves ago (REF defaults to HEAD), or a commit id or unique prefix of
+ *  one; branch names win over tag names, and both over id prefixes. An
+ *  annotated tag names the commit it tags. The suffix ~N moves N first parents back,
+ *  and ^N picks the Nth parent, with ^0 the commit itself. N defaults to
+ *  one, so HEAD~~ and HEAD~2 and HEAD^^ all name the grandparent.
+ *
+ *  Parents are looked up in the commit graph, so resolving HEAD~1000 does
+ *  not read any commits.
+ *
+ *  @author Gabriel and Umar
+ */
+class Revisions {
+
+    /** Separates the two ends of a range. */
+    static final String RANGE = "..";
+
+    /** The name of the current commit. */
+    static final String HEAD = "HEAD";
+
+    /** Branches and reflogs. */
+    private final Refs refs;
+
+    /** Tags. */
+    private final Tags tags;
+
+    /** Commits and the commit graph. */
+    private final ObjectStore objects;
+
+    /** Resolves expressions against REFS, TAGS and OBJECTS. */
+    Revisions(Refs refs, Tags tags, ObjectStore objects) {
+        this.refs = refs;
+        this.tags = tags;
+        this.objects = objects;
+    }
+
+    /** Returns the commit id EXPR names, or null if it names none. */
+    String resolve(String expr) {
+        int end = 0;
+        int at = expr.indexOf("@{");
+        if (at >= 0) {
+            end = expr.indexOf('}', at) + 1;
+            if (end == 0) {
+                return null;
+            }
+        }
+        while (end < expr.length() && expr.charAt(end) != '~' && expr.charAt(end) != '^') {
+            end += 1;
+        }
+        if (end == 0 && !expr.isEmpty()) {
+            return null;
+        }
+        String id = resolveBase(expr.substring(0, end));
+
+        int i = end;
+        while (id != null && i < expr.length()) {
+            char op = expr.charAt(i);
+            if (op != '~' && op != '^') {
+                return null;
+            }
+            int start = i + 1;
+            i = start;
+            while (i < expr.length() && Character.isDigit(expr.charAt(i))) {
+                i += 1;
+            }
+            int n;
+            try {
+                n = i == start ? 1 : Integer.parseInt(expr.substring(start, i));
+            } catch (NumberFormatException excp) {
+                return null;
+            }
+            if (op == '~') {
+                id = objects.graph().firstParent(id, n);
+            } else if (n > 0) {
+                String[] parents = objects.graph().parents(id);
+                id = n <= parents.length ? parents[n - 1] : null;
+            }
+        }
+        return id;
+    }
+
+    /** Returns the commit id named by BASE, an expression without
+     *  suffixes, or null. */
+    private String resolveBase(String base) {
+        int at = base.indexOf("@{");
+        if (at >= 0) {
+            if (!base.endsWith("}")) {
+                return null;
+            }
+            return reflogEntry(at == 0 ? HEAD : base.substring(0, at),
+                    base.substring(at + 2, base.length() - 1));
+        }
+        if (base.equals(HEAD)) {
+            return refs.head();
+        }
+        String branch = refs.resolve(base);
+        if (branch != null) {
+            return branch;
+        }
+        String tag = tags.resolve(base);
+        if (tag != null) {
+            return objects.peel(tag);
+        }
+        return objects.findCommit(base);
+    }
+
+    /** Returns the commit id that REF, a branch name or HEAD, pointed at
+     *  INDEX moves ago, or null if its reflog does not go back that far. */
+    private String reflogEntry(String ref, String index) {
+        if (!ref.equals(HEAD) && !refs.exists(ref)) {
+            return null;
+        }
+        int n;
+        try {
+            n = Integer.parseInt(index);
+        } catch (NumberFormatException excp) {
+            return null;
+        }
+        List<Reflog.Entry> entries = refs.reflog().entries(ref);
+        if (n < 0 || n >= entries.size() || !objects.hasCommit(entries.get(n).newId)) {
+            return null;
+        }
+        return entries.get(n).newId;
+    }
+}
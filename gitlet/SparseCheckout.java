@@ -0,0 +1,99 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+
+/** The sparse-checkout definition of a repository: the directories and
+ *  files that are materialized in the working directory. It is stored in
+ *  .gitlet/sparse-checkout, one path prefix per line; when that file does
+ *  not exist, every tracked file is checked out.
+ *
+ *  A prefix selects the path equal to it and everything beneath it. Since
+ *  commits keep their files in a sorted map, the files under a prefix form
+ *  one contiguous range of it, so select() visits only the selected files
+ *  rather than every file a commit tracks.
+ *
+ *  @author Gabriel and Umar
+ */
+class SparseCheckout {
+
+    /** The file holding the prefixes. */
+    private final File file;
+
+    /** The selected prefixes, or null if sparse checkout is off. */
+    private TreeSet<String> prefixes;
+
+    /** The sparse-checkout definition of the repository whose .gitlet
+     *  directory is GITLETDIR. */
+    SparseCheckout(File gitletDir) {
+        file = join(gitletDir, "sparse-checkout");
+        if (file.isFile()) {
+            prefixes = new TreeSet<>();
+            for (String line : readContentsAsString(file).split("\n")) {
+                if (!line.isEmpty()) {
+                    prefixes.add(line);
+                }
+            }
+        }
+    }
+
+    /** Returns true if only some files are checked out. */
+    boolean isEnabled() {
+        return prefixes != null;
+    }
+
+    /** Returns the selected prefixes, in sorted order. */
+    List<String> prefixes() {
+        return prefixes == null ? Collections.emptyList() : new ArrayList<>(prefixes);
+    }
+
+    /** Returns true if the file at PATH is checked out. */
+    boolean includes(String path) {
+        if (prefixes == null) {
+            return true;
+        }
+        for (int slash = path.length(); slash > 0; slash = path.lastIndexOf('/', slash - 1)) {
+            if (prefixes.contains(path.substring(0, slash))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the entries of FILES, a map from paths to blob ids, whose
+     *  paths are checked out. */
+    Map<String, String> select(TreeMap<String, String> files) {
+        if (prefixes == null) {
+            return files;
+        }
+        TreeMap<String, String> selected = new TreeMap<>();
+        for (String prefix : prefixes) {
+            if (files.containsKey(prefix)) {
+                selected.put(prefix, files.get(prefix));
+            }
+            // '0' is the character after '/', so this is everything under PREFIX
+            selected.putAll(files.subMap(prefix + "/", prefix + "0"));
+        }
+        return selected;
+    }
+
+    /** Checks out only the files under PATHS, which must not include the
+     *  working directory itself, from now on. */
+    void set(List<String> paths) {
+        prefixes = new TreeSet<>(paths);
+        writeContents(file, String.join("\n", prefixes) + "\n");
+    }
+
+    /** Checks out every file from now on. */
+    void disable() {
+        prefixes = null;
+        file.delete();
+    }
+}
@@ -0,0 +1,98 @@
+package gitlet;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static gitlet.Utils.*;
+
+/** The stack of stashed changes of a repository, newest first, kept in
+ *  .gitlet/stash.
+ *
+ *  An entry records the commit it was made on and two trees: the files as
+ *  staged and the files as they were in the working directory. Both trees
+ *  point at blob ids, and only modified files get new blobs, so stashing a
+ *  large tree with a few changes writes a few blobs and two small trees.
+ *
+ *  @author Gabriel and Umar
+ */
+class Stash {
+
+    /** One set of stashed changes. */
+    static class Entry implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        /** The id of the commit the changes were made on. */
+        final String baseId;
+
+        /** The id of the tree of the staged files. */
+        final String indexTree;
+
+        /** The id of the tree of the working files. */
+        final String workTree;
+
+        /** Describes the changes. */
+        final String message;
+
+        /** When the changes were stashed. */
+        final Date timestamp;
+
+        /** Changes made on commit BASEID, with staged files INDEXTREE and
+         *  working files WORKTREE, described by MESSAGE. */
+        Entry(String baseId, String indexTree, String workTree, String message) {
+            this.baseId = baseId;
+            this.indexTree = indexTree;
+            this.workTree = workTree;
+            this.message = message;
+            this.timestamp = new Date();
+        }
+    }
+
+    /** The file holding the stack. */
+    private final File file;
+
+    /** The entries, newest first, once read. */
+    private ArrayList<Entry> entries;
+
+    /** The stash of the repository whose .gitlet directory is GITLETDIR. */
+    Stash(File gitletDir) {
+        file = join(gitletDir, "stash");
+    }
+
+    /** Returns the entries, newest first. */
+    @SuppressWarnings("unchecked")
+    List<Entry> entries() {
+        if (entries == null) {
+            entries = file.isFile() ? readObject(file, ArrayList.class) : new ArrayList<>();
+        }
+        return entries;
+    }
+
+    /** Returns entry INDEX, counting from the newest, or null if there is
+     *  no such entry. */
+    Entry get(int index) {
+        return index >= 0 && index < entries().size() ? entries().get(index) : null;
+    }
+
+    /** Puts ENTRY on top of the stack. */
+    void push(Entry entry) {
+        entries().add(0, entry);
+        save();
+    }
+
+    /** Removes entry INDEX, which must exist. */
+    void drop(int index) {
+        entries().remove(index);
+        save();
+    }
+
+    private void save() {
+        if (entries.isEmpty()) {
+            file.delete();
+        } else {
+            writeObject(file, entries);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/** An annotated tag: a name given to a commit together with a message and
+ *  the time it was made. Tags are stored in the object store and named by
+ *  the SHA-1 of their contents, and a tag ref holds the tag's id where a
+ *  lightweight tag would hold the commit's.
+ *
+ *  @author Gabriel and Umar
+ */
+class Tag implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** The name the tag was created under. */
+    private final String name;
+
+    /** The id of the tagged commit. */
+    private final String commitId;
+
+    /** What the tag says about the commit. */
+    private final String message;
+
+    /** When the tag was made. */
+    private final Date timestamp;
+
+    /** A tag called NAME on commit COMMITID with MESSAGE, made now. */
+    Tag(String name, String commitId, String message) {
+        this.name = name;
+        this.commitId = commitId;
+        this.message = message;
+        this.timestamp = new Date();
+    }
+
+    String getName() {
+        return name;
+    }
+
+    String getCommitId() {
+        return commitId;
+    }
+
+    String getMessage() {
+        return message;
+    }
+
+    Date getTimestamp() {
+        return timestamp;
+    }
+}
@@ -0,0 +1,89 @@
+package gitlet;
+
+import java.io.File;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static gitlet.Utils.*;
+
+/** The tags of a repository, a namespace of refs apart from the branches.
+ *
+ *  A tag holds either a commit id (a lightweight tag) or the id of a Tag
+ *  object (an annotated one). Tags are rarely moved, so they are kept only
+ *  in packed-tags, a PackedRefs table, and never as loose files: looking
+ *  one up is a bisection of the mapped table, and listing them reads one
+ *  file, however many release tags accumulate. Listing branches and
+ *  status never look at them.
+ *
+ *  New and deleted tags are kept in memory and written by flush() in a
+ *  single rewrite of the table, so a batch creating many tags writes it
+ *  once. Writers hold the repository lock, so the table cannot change
+ *  underneath them.
+ *
+ *  @author Gabriel and Umar
+ */
+class Tags {
+
+    /** The tag table. */
+    private final PackedRefs packed;
+
+    /** Tags created or deleted since the last flush, by name, with a null
+     *  id for a deleted one. */
+    private final Map<String, String> pending = new TreeMap<>();
+
+    /** The tags of the repository whose .gitlet directory is GITLETDIR. */
+    Tags(File gitletDir) {
+        packed = new PackedRefs(join(gitletDir, "packed-tags"));
+    }
+
+    /** Returns the id tag NAME holds, or null if there is no such tag. */
+    String resolve(String name) {
+        if (pending.containsKey(name)) {
+            return pending.get(name);
+        }
+        return packed.lookup(name);
+    }
+
+    /** Returns true if tag NAME exists. */
+    boolean exists(String name) {
+        return resolve(name) != null;
+    }
+
+    /** Creates tag NAME holding ID, replacing any tag of that name. */
+    void create(String name, String id) {
+        pending.put(name, id);
+    }
+
+    /** Deletes tag NAME. Returns false if it did not exist. */
+    boolean delete(String name) {
+        if (!exists(name)) {
+            return false;
+        }
+        pending.put(name, null);
+        return true;
+    }
+
+    /** Returns every tag and the id it holds, sorted by name. */
+    TreeMap<String, String> all() {
+        TreeMap<String, String> all = packed.readAll();
+        for (Map.Entry<String, String> entry : pending.entrySet()) {
+            if (entry.getValue() == null) {
+                all.remove(entry.getKey());
+            } else {
+                all.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return all;
+    }
+
+    /** Writes the pending changes to packed-tags. */
+    void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        packed.reload();
+        TreeMap<String, String> all = all();
+        packed.write(all);
+        pending.clear();
+    }
+}
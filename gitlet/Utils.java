@@ -11,6 +11,7 @@ import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -62,6 +63,26 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** Returns the bytes named by the hexadecimal numeral HEX, such as a
+     *  SHA-1 UID. */
+    static byte[] hexToBytes(String hex) {
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return result;
+    }
+
+    /** Returns BYTES as a lower-case hexadecimal numeral. */
+    static String bytesToHex(byte[] bytes) {
+        StringBuilder result = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes) {
+            result.append(Character.forDigit((b >> 4) & 0xF, 16));
+            result.append(Character.forDigit(b & 0xF, 16));
+        }
+        return result.toString();
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -135,6 +156,28 @@ class Utils {
         }
     }
 
+    /** Replace FILE with CONTENTS in one step, by writing them to a new
+     *  temporary file in the same directory and renaming that over FILE,
+     *  so a reader sees either the old contents or the new ones and two
+     *  writers never share a temporary file.  Throws
+     *  IllegalArgumentException in case of problems. */
+    static void replaceContents(File file, byte[] contents) {
+        File temp = null;
+        try {
+            temp = Files.createTempFile(file.getParentFile().toPath(),
+                                        file.getName(), ".tmp").toFile();
+            writeContents(temp, contents);
+            Files.move(temp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            if (temp != null) {
+                temp.delete();
+            }
+            throw new IllegalArgumentException(excp);
+        }
+    }
+
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
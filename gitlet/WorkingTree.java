@@ -0,0 +1,173 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import static gitlet.Utils.*;
+
+/** The plain files under a directory, such as the working directory or a
+ *  staging area.
+ *
+ *  Paths are relative to the root and use '/' between components, which is
+ *  how commits record them. Listing forks one task per subdirectory on the
+ *  common ForkJoinPool, so large trees are read by several threads at once.
+ *  Symbolic links are not followed, and .gitlet directories are never
+ *  entered. A working tree that honors ignore files also skips everything
+ *  its .gitletignore files exclude, without listing ignored directories.
+ *
+ *  @author Gabriel and Umar
+ */
+class WorkingTree {
+
+    /** Name of the directories that are never listed. */
+    private static final String GITLET_DIR_NAME = ".gitlet";
+
+    /** The directory whose files are listed. */
+    private final File root;
+
+    /** Whether .gitletignore files are honored. */
+    private final boolean useIgnoreFiles;
+
+    /** All the files under ROOT. */
+    WorkingTree(File root) {
+        this(root, false);
+    }
+
+    /** The files under ROOT, leaving out those excluded by .gitletignore
+     *  files if USEIGNOREFILES is true. */
+    WorkingTree(File root, boolean useIgnoreFiles) {
+        this.root = root;
+        this.useIgnoreFiles = useIgnoreFiles;
+    }
+
+    /** Returns the sorted paths of every plain file under the root. */
+    List<String> files() {
+        return files("");
+    }
+
+    /** Returns the sorted paths of every plain file under DIR, a path
+     *  relative to the root, or "" for the root itself. */
+    List<String> files(String dir) {
+        File start = dir.isEmpty() ? root : join(root, dir);
+        if (!start.isDirectory()) {
+            return new ArrayList<>();
+        }
+        IgnoreRules rules = useIgnoreFiles ? IgnoreRules.at(root, dir) : null;
+        List<String> result = ForkJoinPool.commonPool().invoke(
+                new Walk(start.toPath(), dir.isEmpty() ? "" : dir + "/", rules));
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Lists one directory and forks a Walk for each subdirectory. */
+    private static class Walk extends RecursiveTask<List<String>> {
+        private static final long serialVersionUID = 1L;
+
+        /** The directory to list. */
+        private final Path dir;
+
+        /** The path of DIR relative to the root, ending in '/' unless it
+         *  is the root. */
+        private final String prefix;
+
+        /** The ignore rules in effect in DIR, or null to list everything. */
+        private final IgnoreRules rules;
+
+        Walk(Path dir, String prefix, IgnoreRules rules) {
+            this.dir = dir;
+            this.prefix = prefix;
+            this.rules = rules;
+        }
+
+        @Override
+        protected List<String> compute() {
+            List<Path> entries = new ArrayList<>();
+            IgnoreRules here = rules;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path entry : stream) {
+                    entries.add(entry);
+                    if (here != null && entry.getFileName().toString().equals(IgnoreRules.FILE_NAME)) {
+                        here = here.withFile(entry.toFile());
+                    }
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp);
+            }
+
+            List<String> found = new ArrayList<>();
+            List<Walk> subdirs = new ArrayList<>();
+            try {
+                for (Path entry : entries) {
+                    String name = entry.getFileName().toString();
+                    BasicFileAttributes attrs = Files.readAttributes(entry,
+                            BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    if (here != null && here.isIgnored(name, attrs.isDirectory())) {
+                        continue;
+                    }
+                    if (attrs.isDirectory()) {
+                        if (!name.equals(GITLET_DIR_NAME)) {
+                            subdirs.add(new Walk(entry, prefix + name + "/",
+                                    here == null ? null : here.enter(name)));
+                        }
+                    } else if (attrs.isRegularFile()) {
+                        found.add(prefix + name);
+                    }
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp);
+            }
+            invokeAll(subdirs);
+            for (Walk subdir : subdirs) {
+                found.addAll(subdir.join());
+            }
+            return found;
+        }
+    }
+
+    /* PATHS */
+
+    /** Returns PATH, given relative to the current directory, in the form
+     *  commits record it, or null if it lies outside the working directory.
+     *  The working directory itself is "". */
+    static String normalize(String path) {
+        Path normalized = Paths.get(path).normalize();
+        if (normalized.isAbsolute() || normalized.startsWith("..")) {
+            return null;
+        }
+        return normalized.toString().replace(File.separatorChar, '/');
+    }
+
+    /** Returns the file at PATH under ROOT after creating its parent
+     *  directories. */
+    static File prepare(File root, String path) {
+        File file = join(root, path);
+        file.getParentFile().mkdirs();
+        return file;
+    }
+
+    /** Deletes the file at PATH under ROOT, then every parent directory
+     *  that this leaves empty, stopping at ROOT. */
+    static void delete(File root, String path) {
+        File file = join(root, path);
+        if (!file.delete()) {
+            return;
+        }
+        for (File dir = file.getParentFile(); dir != null && !dir.equals(root); dir = dir.getParentFile()) {
+            String[] rest = dir.list();
+            if (rest == null || rest.length > 0 || !dir.delete()) {
+                return;
+            }
+        }
+    }
+}